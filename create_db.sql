@@ -9,7 +9,8 @@ CREATE TABLE default_settings (
 
 CREATE TABLE to_update_votes (
   serverId bigint(20) NOT NULL,
-  messageId bigint(20) NOT NULL
+  messageId bigint(20) NOT NULL,
+  sentFingerprint bigint(20) DEFAULT NULL
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
 
 CREATE TABLE voters_votes (
@@ -24,6 +25,7 @@ CREATE TABLE votes (
   title varchar(100) NOT NULL,
   description varchar(1000) NOT NULL,
   start bigint(20) NOT NULL,
+  endTime bigint(20) NOT NULL,
   lastEditMade tinyint(1) NOT NULL DEFAULT 0,
   votesPerVoter tinyint(4) NOT NULL,
   durationSeconds bigint(20) NOT NULL,
@@ -57,7 +59,9 @@ ALTER TABLE votes
 ALTER TABLE votes
   ADD KEY idx_votes_serverId (serverId);
 ALTER TABLE votes
-  ADD KEY idx_votes_lastEditMade (lastEditMade);
+  ADD KEY idx_votes_lastEditMade_endTime (lastEditMade,endTime);
+ALTER TABLE votes
+  ADD KEY idx_votes_endTime (endTime);
 
 ALTER TABLE vote_options
   ADD PRIMARY KEY (id);
@@ -76,3 +80,15 @@ ALTER TABLE voters_votes
 
 ALTER TABLE vote_options
   ADD CONSTRAINT fk_vote_options_2_vote FOREIGN KEY (messageId) REFERENCES votes (messageId) ON DELETE CASCADE ON UPDATE CASCADE;
+
+
+-- Migration for existing databases created before votes.endTime existed:
+-- ALTER TABLE votes ADD COLUMN endTime bigint(20) NOT NULL DEFAULT 0 AFTER start;
+-- UPDATE votes SET endTime = start + durationSeconds;
+-- ALTER TABLE votes ALTER COLUMN endTime DROP DEFAULT;
+-- ALTER TABLE votes DROP KEY idx_votes_lastEditMade;
+-- ALTER TABLE votes ADD KEY idx_votes_lastEditMade_endTime (lastEditMade,endTime);
+-- ALTER TABLE votes ADD KEY idx_votes_endTime (endTime);
+
+-- Migration for existing databases created before to_update_votes.sentFingerprint existed:
+-- ALTER TABLE to_update_votes ADD COLUMN sentFingerprint bigint(20) DEFAULT NULL;
@@ -13,6 +13,7 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import eu._4fh.dcvotebot.discord.Bot;
 import eu._4fh.dcvotebot.util.Config;
 import eu._4fh.dcvotebot.util.Log;
+import eu._4fh.dcvotebot.util.MetricsServer;
 
 @DefaultAnnotation(NonNull.class)
 public class Main {
@@ -76,9 +77,12 @@ public class Main {
 			throw new IllegalStateException("Multiple shards are currently not supported");
 		}
 
+		final MetricsServer metricsServer = new MetricsServer(Config.instance().metricsPort);
 		try (final Bot bot = new Bot(shardId, shardTotal)) {
 			shutdown.acquireUninterruptibly();
 			Log.getLog(this).info("Initiating shutdown");
+		} finally {
+			metricsServer.close();
 		}
 	}
 }
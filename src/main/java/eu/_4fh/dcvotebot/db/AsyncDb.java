@@ -0,0 +1,139 @@
+package eu._4fh.dcvotebot.db;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import eu._4fh.dcvotebot.db.Db.Transaction;
+import eu._4fh.dcvotebot.util.CacheMetrics;
+import eu._4fh.dcvotebot.util.Config;
+import eu._4fh.dcvotebot.util.TryAgainLaterException;
+
+/**
+ * Runs Db calls on a dedicated, bounded thread pool, so a slow database doesn't stall the JDA event thread.
+ */
+@DefaultAnnotation(NonNull.class)
+public class AsyncDb {
+	public interface DbAction<T> {
+		T run(Db db, Transaction trans);
+	}
+
+	private static AsyncDb instance = new AsyncDb(createPool());
+
+	@SuppressFBWarnings(value = "MS_EXPOSE_REP")
+	public static AsyncDb instance() {
+		return instance;
+	}
+
+	/**
+	 * Runs everything on the calling thread, so tests can check the results right after calling a handler.
+	 */
+	@SuppressFBWarnings(value = "MS_EXPOSE_REP")
+	public static AsyncDb forTestDirectExecutor() {
+		instance = new AsyncDb(null);
+		return instance;
+	}
+
+	/**
+	 * Runs everything on a new pool, like in production, for tests of the shutdown.
+	 */
+	@SuppressFBWarnings(value = "MS_EXPOSE_REP")
+	public static AsyncDb forTestNewPool() {
+		instance = new AsyncDb(createPool());
+		return instance;
+	}
+
+	private static ThreadPoolExecutor createPool() {
+		final AtomicInteger threadCounter = new AtomicInteger(0);
+		final int threads = Config.instance().dbAsyncThreads;
+		return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(Config.instance().dbAsyncQueueSize), runnable -> {
+					final Thread thread = new Thread(runnable, "AsyncDb-" + threadCounter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+
+	private final @CheckForNull ThreadPoolExecutor pool;
+	private final Executor executor;
+	private final AtomicLong waitedTasks = new AtomicLong();
+	private final AtomicLong waitedNanos = new AtomicLong();
+
+	private AsyncDb(final @CheckForNull ThreadPoolExecutor pool) {
+		this.pool = pool;
+		this.executor = pool != null ? pool : Runnable::run;
+		CacheMetrics.registerGauge("db_queue_length", "Database calls waiting for a thread", this::queueLength);
+		CacheMetrics.registerCounter("db_started_calls_total", "Database calls started by a thread", this::waitedTasks);
+		CacheMetrics.registerCounter("db_queue_wait_milliseconds_total",
+				"Time the started database calls waited for a thread", () -> waitedNanos() / 1_000_000L);
+	}
+
+	public <T> CompletableFuture<T> read(final long serverId, final DbAction<T> action) {
+		return run(serverId, true, action);
+	}
+
+	public <T> CompletableFuture<T> write(final long serverId, final DbAction<T> action) {
+		return run(serverId, false, action);
+	}
+
+	private <T> CompletableFuture<T> run(final long serverId, final boolean readOnly, final DbAction<T> action) {
+		final long submitted = System.nanoTime();
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				waitedNanos.addAndGet(System.nanoTime() - submitted);
+				waitedTasks.incrementAndGet();
+				final Db db = Db.instance();
+				try (Transaction trans = readOnly ? db.getReadOnlyTransaction(serverId)
+						: db.getTransaction(serverId)) {
+					return action.run(db, trans);
+				}
+			}, executor);
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(new TryAgainLaterException("Database queue is full", e));
+		}
+	}
+
+	/**
+	 * Waits for queued calls, so no answers are lost on shutdown.
+	 */
+	public void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			try {
+				pool.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) { // NOSONAR We are shutting down, just continue shutdown
+			}
+		}
+	}
+
+	public int queueLength() {
+		final @CheckForNull BlockingQueue<Runnable> queue = pool != null ? pool.getQueue() : null;
+		return queue != null ? queue.size() : 0;
+	}
+
+	public long waitedTasks() {
+		return waitedTasks.get();
+	}
+
+	/**
+	 * Sum of the time all tasks waited in the queue, until a thread started them.
+	 */
+	public long waitedNanos() {
+		return waitedNanos.get();
+	}
+
+	public double averageWaitMillis() {
+		final long tasks = waitedTasks.get();
+		return tasks > 0 ? waitedNanos.get() / 1_000_000d / tasks : 0d;
+	}
+}
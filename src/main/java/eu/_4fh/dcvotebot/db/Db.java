@@ -1,20 +1,34 @@
 package eu._4fh.dcvotebot.db;
 
+import java.lang.ref.Cleaner;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.logging.Level;
 
 import javax.sql.DataSource;
@@ -24,7 +38,9 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.Ticker;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
@@ -33,6 +49,7 @@ import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import eu._4fh.dcvotebot.util.CacheMetrics;
 import eu._4fh.dcvotebot.util.Config;
 import eu._4fh.dcvotebot.util.Log;
 
@@ -46,36 +63,87 @@ public class Db {
 		}
 	}
 
-	public class Transaction implements AutoCloseable {
-		private @Nullable Connection con;
-		private final long serverId;
-		private final Throwable startException;
+	public static class DeletedRows {
+		public static final DeletedRows NONE = new DeletedRows(0, 0, 0);
+
+		public final int votes;
+		public final int voteOptions;
+		public final int votersVotes;
+
+		/*package*/ DeletedRows(final int votes, final int voteOptions, final int votersVotes) {
+			this.votes = votes;
+			this.voteOptions = voteOptions;
+			this.votersVotes = votersVotes;
+		}
+
+		public DeletedRows plus(final DeletedRows other) {
+			return new DeletedRows(votes + other.votes, voteOptions + other.voteOptions,
+					votersVotes + other.votersVotes);
+		}
+
+		@Override
+		public String toString() {
+			return "votes=" + votes + ", vote_options=" + voteOptions + ", voters_votes=" + votersVotes;
+		}
+	}
+
+	/**
+	 * Message update, that was still waiting on shutdown.
+	 */
+	public static class ToUpdateVote {
+		public final long serverId;
+		public final long messageId;
+		/** Fingerprint of the text last sent to discord, if known. */
+		public final @CheckForNull Long sentFingerprint;
 
-		private Transaction(final long serverId) {
+		public ToUpdateVote(final long serverId, final long messageId, final @CheckForNull Long sentFingerprint) {
 			this.serverId = serverId;
-			this.startException = new RuntimeException().fillInStackTrace();
-			try {
-				this.con = dataSource.getConnection();
-			} catch (SQLException e) {
-				throw new IllegalStateException(e);
-			}
+			this.messageId = messageId;
+			this.sentFingerprint = sentFingerprint;
 		}
 
 		@Override
-		protected void finalize() { // NOSONAR
-			if (con != null) {
-				Log.getLog(this).log(Level.SEVERE, "Finalized LockHolder, stacktrace at start", startException);
-				close();
+		public int hashCode() {
+			return Objects.hash(serverId, messageId, sentFingerprint);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ToUpdateVote)) {
+				return false;
 			}
+			ToUpdateVote other = (ToUpdateVote) obj;
+			return serverId == other.serverId && messageId == other.messageId
+					&& Objects.equals(sentFingerprint, other.sentFingerprint);
 		}
 
 		@Override
-		public void close() {
+		public String toString() {
+			return "ToUpdateVote [serverId=" + serverId + ", messageId=" + messageId + ", sentFingerprint="
+					+ sentFingerprint + "]";
+		}
+	}
+
+	/**
+	 * The state of a Transaction, that the leak detection needs after the Transaction itself is unreachable.
+	 */
+	private static class TransactionState {
+		private @Nullable Connection con = null;
+		private volatile boolean closed = false;
+		private boolean dirty = false;
+
+		private void close() {
+			closed = true;
 			if (con != null) {
-				try {
-					con.rollback();
-				} catch (SQLException e) {
-					Log.getLog(this).log(Level.SEVERE, "Cant rollback jdbc transaction", e);
+				if (dirty) { // After a commit there is nothing to rollback, so save the round-trip
+					try {
+						con.rollback();
+					} catch (SQLException e) {
+						Log.getLog(this).log(Level.SEVERE, "Cant rollback jdbc transaction", e);
+					}
 				}
 				try {
 					con.close();
@@ -87,6 +155,142 @@ public class Db {
 		}
 	}
 
+	/**
+	 * Value of the votes cache. The cache is keyed by the messageId alone, so the server is checked after the lookup.
+	 */
+	private static class CachedVote {
+		private final long serverId;
+		private final Vote vote;
+
+		private CachedVote(final long serverId, final Vote vote) {
+			this.serverId = serverId;
+			this.vote = vote;
+		}
+
+		private CachedVote with(final Vote newVote) {
+			return new CachedVote(serverId, newVote);
+		}
+
+		private int weight() {
+			int weight = 1 + vote.options.size();
+			for (final VoteOption option : vote.options) {
+				weight += option.voters.size();
+			}
+			return weight;
+		}
+	}
+
+	/**
+	 * Keeps votes until they ended plus the time the final edit of the vote message may take. Running votes stay
+	 * cached, no matter how long they run. Ended votes are dropped soon.
+	 */
+	private static class VoteExpiry implements Expiry<Long, CachedVote> {
+		private final Duration afterEnd;
+		// Maps the end of a vote to the time of the cache ticker
+		private final Instant originInstant;
+		private final long originTicks;
+
+		private VoteExpiry(final Duration afterEnd, final Ticker ticker) {
+			this.afterEnd = afterEnd;
+			this.originInstant = Instant.now();
+			this.originTicks = ticker.read();
+		}
+
+		@Override
+		public long expireAfterCreate(final Long messageId, final CachedVote cached, final long currentTime) {
+			final Vote vote = cached.vote;
+			final long endTicks = originTicks
+					+ Duration.between(originInstant, vote.start.plus(vote.settings.duration)).toNanos();
+			return Math.max(0, endTicks - currentTime) + afterEnd.toNanos();
+		}
+
+		@Override
+		public long expireAfterUpdate(final Long messageId, final CachedVote cached, final long currentTime,
+				final long currentDuration) {
+			// The duration of the vote may have been edited
+			return expireAfterCreate(messageId, cached, currentTime);
+		}
+
+		@Override
+		public long expireAfterRead(final Long messageId, final CachedVote cached, final long currentTime,
+				final long currentDuration) {
+			return currentDuration;
+		}
+	}
+
+	private static class LeakCheck implements Runnable {
+		private final TransactionState state;
+		private final Throwable startException;
+		private final AtomicLong leakedTransactions;
+
+		private LeakCheck(final TransactionState state, final AtomicLong leakedTransactions) {
+			this.state = state;
+			this.startException = new RuntimeException("Transaction started here").fillInStackTrace();
+			this.leakedTransactions = leakedTransactions;
+		}
+
+		@Override
+		public void run() {
+			if (!state.closed && state.con != null) {
+				leakedTransactions.incrementAndGet();
+				Log.getLog(this).log(Level.SEVERE, "Transaction was not closed, stacktrace at start", startException);
+				state.close();
+			}
+		}
+	}
+
+	public class Transaction implements AutoCloseable {
+		private final TransactionState state = new TransactionState();
+		private final long serverId;
+		private final boolean readOnly;
+		private final @CheckForNull Cleaner.Cleanable leakCheck;
+
+		private Transaction(final long serverId, final boolean readOnly) {
+			this.serverId = serverId;
+			this.readOnly = readOnly;
+			// Capturing the stacktrace is expensive, so only check some transactions for leaks
+			if (leakDetectionSamplePercent > 0
+					&& ThreadLocalRandom.current().nextDouble(100d) < leakDetectionSamplePercent) {
+				this.leakCheck = leakCleaner.register(this, new LeakCheck(state, leakedTransactions));
+			} else {
+				this.leakCheck = null;
+			}
+		}
+
+		/**
+		 * Most calls are answered from the caches, so the connection is only taken from the pool on first use.
+		 */
+		private Connection connection() {
+			Validate.validState(!state.closed, "Transaction is already closed");
+			if (state.con == null) {
+				try {
+					state.con = dataSource.getConnection();
+					if (readOnly) {
+						state.con.setReadOnly(true);
+					}
+				} catch (SQLException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			state.dirty = true;
+			return state.con;
+		}
+
+		private void commit() throws SQLException {
+			Validate.validState(!readOnly, "Cant commit a read-only transaction");
+			connection().commit();
+			state.dirty = false;
+		}
+
+		@Override
+		public void close() {
+			state.close();
+			if (leakCheck != null) {
+				leakCheck.clean();
+			}
+		}
+	}
+
 	private static Db instance = new Db(null);
 
 	@SuppressFBWarnings(value = "MS_EXPOSE_REP")
@@ -98,6 +302,11 @@ public class Db {
 
 	@SuppressFBWarnings(value = "MS_EXPOSE_REP")
 	public static Db forTestNewDb() {
+		return forTestNewDb(UnaryOperator.identity());
+	}
+
+	@SuppressFBWarnings(value = "MS_EXPOSE_REP")
+	public static Db forTestNewDb(final UnaryOperator<DataSource> dataSourceWrapper) {
 		final HikariDataSource hikariDs = Config.instance().dataSource;
 		final HikariConfig config = new HikariConfig();
 		hikariDs.copyStateTo(config);
@@ -110,7 +319,7 @@ public class Db {
 			ds.close();
 			throw new RuntimeException(e);
 		}
-		instance = new Db(ds);
+		instance = new Db(dataSourceWrapper.apply(ds));
 		return instance;
 	}
 
@@ -120,25 +329,60 @@ public class Db {
 		} else {
 			this.dataSource = Config.instance().dataSource;
 		}
+		this.leakDetectionSamplePercent = Config.instance().leakDetectionSamplePercent;
+		// Bounded by weight instead of soft references, so the GC doesn't clear many votes at once under heap pressure
+		this.votesCache = Caffeine.newBuilder().ticker(Ticker.systemTicker())
+				.expireAfter(new VoteExpiry(Duration.ofMinutes(Config.instance().updateVotesTimeoutMinutes),
+						Ticker.systemTicker()))
+				.scheduler(Scheduler.systemScheduler()).maximumWeight(Config.instance().voteCacheMaxWeight)
+				.weigher((final Long messageId, final CachedVote cached) -> cached.weight()).recordStats().build();
+		// Clicks on deleted votes would otherwise query the database every time
+		this.unknownVotesCache = Caffeine.newBuilder().expireAfterWrite(Duration.ofDays(1))
+				.scheduler(Scheduler.systemScheduler()).maximumSize(Config.instance().unknownVotesCacheSize)
+				.recordStats().build();
+		CacheMetrics.register("default_settings", defaultSettingsCache);
+		CacheMetrics.register("votes", votesCache);
+		CacheMetrics.register("vote_titles", voteTitlesCache);
+		CacheMetrics.register("unknown_votes", unknownVotesCache);
 	}
 
-	private final DataSource dataSource;
-
-	private final Cache<Long, VoteSettings> defaultSettingsCache = buildCache();
-	private final Cache<Pair<Long, Long>, Vote> votesCache = buildCache();
+	private static final Cleaner leakCleaner = Cleaner.create();
 
-	private <K, V> Cache<K, V> buildCache() {
-		return Caffeine.newBuilder().expireAfterWrite(Duration.ofDays(1)).softValues()
-				.scheduler(Scheduler.systemScheduler()).build();
-	}
+	private final DataSource dataSource;
+	private final double leakDetectionSamplePercent;
+	private final AtomicLong leakedTransactions = new AtomicLong();
+
+	private final Cache<Long, VoteSettings> defaultSettingsCache = Caffeine.newBuilder()
+			.expireAfterWrite(Duration.ofDays(1)).scheduler(Scheduler.systemScheduler()).recordStats().build();
+	private final Cache<Long, CachedVote> votesCache;
+	private final Cache<Long, Boolean> unknownVotesCache;
+	private final AtomicLong insertedVotes = new AtomicLong();
+	private final Object warmUpLock = new Object();
+	/**
+	 * Writes of a vote commit and patch the cached vote while holding its lock, so the cached vote sees the writes in
+	 * the order of their commits, even when they run on several threads.
+	 */
+	private final Object[] voteWriteLocks = Stream.generate(Object::new).limit(64).toArray();
+	private volatile boolean warmUpRunning = false;
+	private final Set<Long> writtenDuringWarmUp = ConcurrentHashMap.newKeySet();
+	private final Cache<Long, Map<Long, VoteTitle>> voteTitlesCache = Caffeine.newBuilder()
+			.expireAfterAccess(Duration.ofDays(1)).scheduler(Scheduler.systemScheduler()).recordStats().build();
 
 	private <T> T logAndThrow(final String msg, final SQLException e) {
 		Log.getLog(this).log(Level.SEVERE, msg, e);
 		throw new IllegalStateException(msg, e);
 	}
 
+	/**
+	 * Placeholders for a multi-row insert, so all rows are sent in one round-trip: (?,?),(?,?),...
+	 */
+	private static String valuesPlaceholders(final int rows, final int columns) {
+		final String row = "(" + String.join(",", Collections.nCopies(columns, "?")) + ")";
+		return String.join(",", Collections.nCopies(rows, row));
+	}
+
 	private VoteSettings loadDefaultSettings(final Transaction trans) {
-		try (PreparedStatement stmt = trans.con.prepareStatement(
+		try (PreparedStatement stmt = trans.connection().prepareStatement(
 				"SELECT votesPerVoter, durationSeconds, voterCanChangeVotes, timezoneId FROM default_settings WHERE serverId = ?")) {
 			stmt.setLong(1, trans.serverId);
 			try (final ResultSet rs = stmt.executeQuery()) {
@@ -156,52 +400,94 @@ public class Db {
 		return new VoteSettings(rs.getByte(i++), rs.getLong(i++), rs.getBoolean(i++), timezoneId); // NOSONAR
 	}
 
-	private Vote loadVote(final Transaction trans, final long messageId) {
-		try (PreparedStatement voteStmt = trans.con.prepareStatement(
-				"SELECT channelId, title, description, start, votesPerVoter, durationSeconds, voterCanChangeVotes FROM votes WHERE messageId = ? AND serverId = ?");
-				PreparedStatement voteOptionsStmt = trans.con
-						.prepareStatement("SELECT id, title FROM vote_options WHERE messageId = ? ORDER BY id");
-				PreparedStatement votersVotesStmt = trans.con.prepareStatement(
-						"SELECT voteOptionId, voterId FROM voters_votes WHERE voteOptionId IN (SELECT id FROM vote_options WHERE messageId = ?) ORDER BY voteOptionId")) {
-			voteStmt.setLong(1, messageId);
-			voteStmt.setLong(2, trans.serverId);
-			voteOptionsStmt.setLong(1, messageId);
-			votersVotesStmt.setLong(1, messageId);
-			try (ResultSet voteRs = voteStmt.executeQuery()) {
-				if (!voteRs.next()) {
-					throw new NotFoundException("Unknown vote " + messageId + " for server " + trans.serverId);
+	private CachedVote loadVote(final Transaction trans, final long messageId) {
+		// Vote, options and voters in one round-trip. The first column tells which kind of row it is.
+		try (PreparedStatement stmt = trans.connection().prepareStatement(
+				"SELECT 0, v.channelId, v.serverId, v.title, v.description, v.start, v.votesPerVoter, v.durationSeconds, v.voterCanChangeVotes, d.timezoneId "
+						+ "FROM votes v LEFT JOIN default_settings d ON d.serverId = v.serverId WHERE v.messageId = ? "
+						+ "UNION ALL SELECT 1, o.id, 0, o.title, NULL, 0, 0, 0, 0, NULL FROM vote_options o WHERE o.messageId = ? "
+						+ "UNION ALL SELECT 2, vv.voteOptionId, vv.voterId, NULL, NULL, 0, 0, 0, 0, NULL FROM voters_votes vv "
+						+ "JOIN vote_options o ON o.id = vv.voteOptionId WHERE o.messageId = ? ORDER BY 1, 2, 3")) {
+			stmt.setLong(1, messageId);
+			stmt.setLong(2, messageId);
+			stmt.setLong(3, messageId);
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (!rs.next() || rs.getInt(1) != 0) {
+					throw new NotFoundException("Unknown vote " + messageId);
 				}
 
-				final Map<Long, Set<Long>> votersVotes = new HashMap<>();
-				try (ResultSet votersVotesRs = votersVotesStmt.executeQuery()) {
-					while (votersVotesRs.next()) {
-						votersVotes.computeIfAbsent(votersVotesRs.getLong(1), optionId -> new HashSet<>())
-								.add(votersVotesRs.getLong(2));
+				final long channelId = rs.getLong(2);
+				final long serverId = rs.getLong(3);
+				final String title = rs.getString(4);
+				final String description = rs.getString(5);
+				final Instant start = Instant.ofEpochSecond(rs.getLong(6));
+				final @CheckForNull String timezoneId = rs.getString(10);
+				final VoteSettings settings = createVoteSettings(
+						timezoneId != null ? timezoneId : VoteSettings.getDefault().timezoneId, rs, 7);
+
+				final Map<Long, String> optionNames = new LinkedHashMap<>();
+				final Map<Long, VoterIds.Builder> votersVotes = new HashMap<>();
+				while (rs.next()) {
+					if (rs.getInt(1) == 1) {
+						optionNames.put(rs.getLong(2), rs.getString(4));
+					} else {
+						votersVotes.computeIfAbsent(rs.getLong(2), optionId -> new VoterIds.Builder()).add(rs.getLong(3));
 					}
 				}
 
-				final List<VoteOption> options = new ArrayList<>();
-				try (ResultSet voteOptionsRs = voteOptionsStmt.executeQuery()) {
-					while (voteOptionsRs.next()) {
-						final long voteOptionId = voteOptionsRs.getLong(1);
-						final VoteOption option = new VoteOption(voteOptionId, voteOptionsRs.getString(2), Collections
-								.unmodifiableSet(votersVotes.getOrDefault(voteOptionId, Collections.emptySet())));
-						options.add(option);
-					}
+				final List<VoteOption> options = new ArrayList<>(optionNames.size());
+				for (final Map.Entry<Long, String> optionName : optionNames.entrySet()) {
+					final long voteOptionId = optionName.getKey();
+					final @CheckForNull VoterIds.Builder voters = votersVotes.get(voteOptionId);
+					options.add(new VoteOption(voteOptionId, optionName.getValue(),
+							voters != null ? voters.build() : VoterIds.empty()));
 				}
 
-				final VoteSettings settings = createVoteSettings(getDefaultSettings(trans).timezoneId, voteRs, 5);
-
-				return new Vote(settings, voteRs.getLong(1), voteRs.getString(2), voteRs.getString(3),
-						Instant.ofEpochSecond(voteRs.getLong(4)), Collections.unmodifiableList(options));
+				return new CachedVote(serverId,
+						new Vote(settings, channelId, title, description, start, Collections.unmodifiableList(options)));
 			}
 		} catch (SQLException e) {
 			return logAndThrow("Cant get vote from db", e);
 		}
 	}
 
+	private Map<Long, VoteTitle> loadVoteTitles(final Transaction trans) {
+		try (PreparedStatement stmt = trans.connection()
+				.prepareStatement("SELECT messageId, title, endTime FROM votes WHERE serverId = ?")) {
+			stmt.setLong(1, trans.serverId);
+			final Map<Long, VoteTitle> titles = new ConcurrentHashMap<>();
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					final long messageId = rs.getLong(1);
+					titles.put(messageId, new VoteTitle(messageId, rs.getString(2), Instant.ofEpochSecond(rs.getLong(3))));
+				}
+			}
+			return titles;
+		} catch (SQLException e) {
+			return logAndThrow("Cant get vote titles for server " + trans.serverId, e);
+		}
+	}
+
+	/**
+	 * Changes the title index of a server, if it is loaded. Waits for a running load, so the loaded index is updated
+	 * too.
+	 */
+	private void updateVoteTitles(final long serverId, final Consumer<Map<Long, VoteTitle>> update) {
+		voteTitlesCache.asMap().computeIfPresent(serverId, (id, titles) -> {
+			update.accept(titles);
+			return titles;
+		});
+	}
+
 	public Transaction getTransaction(final long serverId) {
-		return new Transaction(serverId);
+		return new Transaction(serverId, false);
+	}
+
+	/**
+	 * For paths that only read. The connection is marked read-only, so the driver and the server can optimize for it.
+	 */
+	public Transaction getReadOnlyTransaction(final long serverId) {
+		return new Transaction(serverId, true);
 	}
 
 	public VoteSettings getDefaultSettings(final Transaction trans) {
@@ -209,7 +495,7 @@ public class Db {
 	}
 
 	public void setDefaultSettings(final Transaction trans, final VoteSettings settings) {
-		try (PreparedStatement existsStmt = trans.con
+		try (PreparedStatement existsStmt = trans.connection()
 				.prepareStatement("SELECT 1 FROM default_settings WHERE serverId = ?")) {
 			existsStmt.setLong(1, trans.serverId);
 			try (ResultSet existsRs = existsStmt.executeQuery()) {
@@ -219,100 +505,318 @@ public class Db {
 				} else {
 					query = "INSERT INTO default_settings(votesPerVoter, durationSeconds, voterCanChangeVotes, timezoneId, serverId) VALUES(?,?,?,?,?)";
 				}
-				try (PreparedStatement stmt = trans.con.prepareStatement(query)) {
+				try (PreparedStatement stmt = trans.connection().prepareStatement(query)) {
 					stmt.setByte(1, settings.answersPerUser);
 					stmt.setLong(2, settings.duration.toSeconds());
 					stmt.setBoolean(3, settings.canChangeAnswers);
 					stmt.setString(4, settings.timezoneId);
 					stmt.setLong(5, trans.serverId);
 					Validate.inclusiveBetween(1, 1, stmt.executeUpdate());
-					trans.con.commit();
+					trans.commit();
 				}
 			}
 		} catch (SQLException e) {
 			logAndThrow("Cant update settings", e);
 		}
 		defaultSettingsCache.invalidate(trans.serverId);
+		// Cached votes live until their end and are rendered with the timezone of the server
+		votesCache.asMap().values().removeIf(cached -> cached.serverId == trans.serverId);
 	}
 
 	public Vote getVote(final Transaction trans, final long voteMsgId) {
 		Validate.notNull(trans);
-		return votesCache.get(Pair.of(trans.serverId, voteMsgId), idPair -> loadVote(trans, voteMsgId));
+		if (unknownVotesCache.getIfPresent(voteMsgId) != null) {
+			throw new NotFoundException("Unknown vote " + voteMsgId);
+		}
+		final long insertedVotesBefore = insertedVotes.get();
+		final CachedVote cached;
+		try {
+			cached = votesCache.get(voteMsgId, messageId -> loadVote(trans, messageId));
+		} catch (NotFoundException e) {
+			// Don't remember the miss, when a vote was inserted meanwhile. insertVote invalidates the same key, so the
+			// check and the put can't be interleaved with it.
+			unknownVotesCache.asMap().compute(voteMsgId,
+					(messageId, unknown) -> insertedVotes.get() == insertedVotesBefore ? Boolean.TRUE : unknown);
+			throw e;
+		}
+		if (cached.serverId != trans.serverId) {
+			throw new NotFoundException("Unknown vote " + voteMsgId + " for server " + trans.serverId);
+		}
+		return cached.vote;
 	}
 
 	public void insertVote(final Transaction trans, final long voteMsgId, final Vote vote) {
 		Validate.isTrue(voteMsgId != 0);
 
-		try (PreparedStatement voteStmt = trans.con.prepareStatement(
-				"INSERT INTO votes(serverId, messageId, channelId, title, description, start, votesPerVoter, durationSeconds, voterCanChangeVotes) VALUES (?,?,?,?,?,?,?,?,?)");
-				PreparedStatement voteOptionsStmt = trans.con
-						.prepareStatement("INSERT INTO vote_options(messageId, title) VALUES (?,?)")) {
+		// loadVote always uses the timezone of the server, so the cached vote must do the same
+		final String timezoneId = getDefaultSettings(trans).timezoneId;
+		final List<VoteOption> options = new ArrayList<>(vote.options.size());
+		try (PreparedStatement voteStmt = trans.connection().prepareStatement(
+				"INSERT INTO votes(serverId, messageId, channelId, title, description, start, endTime, votesPerVoter, durationSeconds, voterCanChangeVotes) VALUES (?,?,?,?,?,?,?,?,?,?)");
+				PreparedStatement voteOptionsStmt = trans.connection().prepareStatement(
+						"INSERT INTO vote_options(messageId, title) VALUES " + valuesPlaceholders(vote.options.size(), 2));
+				// Not getGeneratedKeys(), because MariaDB returns only the first id of a multi-row insert
+				PreparedStatement idsStmt = trans.connection()
+						.prepareStatement("SELECT id, title FROM vote_options WHERE messageId = ?")) {
 			voteStmt.setLong(1, trans.serverId);
 			voteStmt.setLong(2, voteMsgId);
 			voteStmt.setLong(3, vote.channelId);
 			voteStmt.setString(4, vote.title);
 			voteStmt.setString(5, vote.description);
 			voteStmt.setLong(6, vote.start.getEpochSecond());
-			voteStmt.setByte(7, vote.settings.answersPerUser);
-			voteStmt.setLong(8, vote.settings.duration.toSeconds());
-			voteStmt.setBoolean(9, vote.settings.canChangeAnswers);
+			voteStmt.setLong(7, vote.start.plus(vote.settings.duration).getEpochSecond());
+			voteStmt.setByte(8, vote.settings.answersPerUser);
+			voteStmt.setLong(9, vote.settings.duration.toSeconds());
+			voteStmt.setBoolean(10, vote.settings.canChangeAnswers);
 			Validate.inclusiveBetween(1, 1, voteStmt.executeUpdate());
+			int i = 1;
+			for (final VoteOption option : vote.options) {
+				voteOptionsStmt.setLong(i++, voteMsgId);
+				voteOptionsStmt.setString(i++, option.name);
+			}
+			Validate.inclusiveBetween(vote.options.size(), vote.options.size(), voteOptionsStmt.executeUpdate());
+			final Map<String, Long> idsByTitle = new HashMap<>();
+			idsStmt.setLong(1, voteMsgId);
+			try (ResultSet idsRs = idsStmt.executeQuery()) {
+				while (idsRs.next()) {
+					idsByTitle.put(idsRs.getString(2), idsRs.getLong(1));
+				}
+			}
 			for (final VoteOption option : vote.options) {
-				voteOptionsStmt.setLong(1, voteMsgId);
-				voteOptionsStmt.setString(2, option.name);
-				Validate.inclusiveBetween(1, 1, voteOptionsStmt.executeUpdate());
+				final @CheckForNull Long id = idsByTitle.get(option.name);
+				Validate.validState(id != null, "No id generated for vote option");
+				options.add(new VoteOption(id, option.name, VoterIds.empty()));
 			}
-			trans.con.commit();
+			trans.commit();
 		} catch (SQLException e) {
 			logAndThrow("Cant insert vote", e);
 		}
-		votesCache.invalidate(Pair.of(trans.serverId, voteMsgId));
+		insertedVotes.incrementAndGet();
+		unknownVotesCache.invalidate(voteMsgId);
+		// New polls get most clicks in the first minutes, so put the vote into the cache instead of loading it again
+		final VoteSettings settings = new VoteSettings(vote.settings.answersPerUser, vote.settings.duration.toSeconds(),
+				vote.settings.canChangeAnswers, timezoneId);
+		votesCache.put(voteMsgId, new CachedVote(trans.serverId, new Vote(settings, vote.channelId, vote.title,
+				vote.description, vote.start, Collections.unmodifiableList(options))));
+		updateVoteTitles(trans.serverId, titles -> titles.put(voteMsgId,
+				new VoteTitle(voteMsgId, vote.title, vote.start.plus(vote.settings.duration))));
 	}
 
 	public void updateVote(final Transaction trans, final long voteMsgId, final Vote vote) {
 		Validate.isTrue(voteMsgId != 0);
 
-		try (PreparedStatement stmt = trans.con.prepareStatement(
-				"UPDATE votes SET title = ?, description = ?, votesPerVoter = ?, durationSeconds = ?, voterCanChangeVotes = ?, lastEditMade = 0 WHERE messageId = ?")) {
+		try (PreparedStatement stmt = trans.connection().prepareStatement(
+				"UPDATE votes SET title = ?, description = ?, votesPerVoter = ?, durationSeconds = ?, endTime = start + ?, voterCanChangeVotes = ?, lastEditMade = 0 WHERE messageId = ?")) {
 			stmt.setString(1, vote.title);
 			stmt.setString(2, vote.description);
 			stmt.setByte(3, vote.settings.answersPerUser);
 			stmt.setLong(4, vote.settings.duration.toSeconds());
-			stmt.setBoolean(5, vote.settings.canChangeAnswers);
-			stmt.setLong(6, voteMsgId);
+			stmt.setLong(5, vote.settings.duration.toSeconds());
+			stmt.setBoolean(6, vote.settings.canChangeAnswers);
+			stmt.setLong(7, voteMsgId);
 			Validate.inclusiveBetween(1, 1, stmt.executeUpdate());
-			trans.con.commit();
+			synchronized (voteWriteLock(voteMsgId)) {
+				trans.commit();
+				markWrittenDuringWarmUp(voteMsgId);
+				// Merge into the cached vote, because its answers may be newer than the ones in the given vote
+				votesCache.asMap().computeIfPresent(voteMsgId,
+						(messageId, cached) -> cached.with(cached.vote.withEdit(vote)));
+			}
 		} catch (SQLException e) {
 			logAndThrow("Cant update vote", e);
 		}
-		votesCache.invalidate(Pair.of(trans.serverId, voteMsgId));
+		updateVoteTitles(trans.serverId, titles -> titles.put(voteMsgId,
+				new VoteTitle(voteMsgId, vote.title, vote.start.plus(vote.settings.duration))));
 	}
 
-	public void updateVoteVotes(final Transaction trans, final long voterId, final long voteMsgId,
+	/**
+	 * Replaces the answers of the voter. The check if the voter may change the answers runs here again, because
+	 * another click of the voter could have been saved since the caller read the vote.
+	 *
+	 * @return false, if the voter already answered and the vote doesn't allow to change the answers.
+	 */
+	public boolean updateVoteVotes(final Transaction trans, final long voterId, final long voteMsgId,
 			final Set<Long> votes) {
-		try (PreparedStatement delStmt = trans.con.prepareStatement("DELETE FROM voters_votes WHERE voterId = ? AND "
-				+ "voteOptionId IN (SELECT id FROM vote_options WHERE messageId = ?)");
-				PreparedStatement insertStmt = trans.con
-						.prepareStatement("INSERT INTO voters_votes(voteOptionId, voterId) VALUES (?,?)")) {
-			delStmt.setLong(1, voterId);
-			delStmt.setLong(2, voteMsgId);
-			delStmt.executeUpdate();
+		final boolean canChangeAnswers = getVote(trans, voteMsgId).settings.canChangeAnswers;
+		if (!canChangeAnswers && hasVoted(trans, voterId, voteMsgId)) {
+			return false;
+		}
+		try {
+			// Without answers to change there is nothing to delete
+			if (canChangeAnswers) {
+				try (PreparedStatement delStmt = trans.connection().prepareStatement(
+						"DELETE FROM voters_votes WHERE voterId = ? AND "
+								+ "voteOptionId IN (SELECT id FROM vote_options WHERE messageId = ?)")) {
+					delStmt.setLong(1, voterId);
+					delStmt.setLong(2, voteMsgId);
+					delStmt.executeUpdate();
+				}
+			}
 
-			for (final long voteOptionId : votes) {
-				insertStmt.setLong(1, voteOptionId);
-				insertStmt.setLong(2, voterId);
-				Validate.inclusiveBetween(1, 1, insertStmt.executeUpdate());
+			if (!votes.isEmpty()) {
+				try (PreparedStatement insertStmt = trans.connection().prepareStatement(
+						"INSERT INTO voters_votes(voteOptionId, voterId) VALUES " + valuesPlaceholders(votes.size(), 2))) {
+					int i = 1;
+					for (final long voteOptionId : votes) {
+						insertStmt.setLong(i++, voteOptionId);
+						insertStmt.setLong(i++, voterId);
+					}
+					Validate.inclusiveBetween(votes.size(), votes.size(), insertStmt.executeUpdate());
+				}
+			}
+			synchronized (voteWriteLock(voteMsgId)) {
+				trans.commit();
+				markWrittenDuringWarmUp(voteMsgId);
+				// Apply the committed answers to the cached tally, so the next getVote doesn't need to reload all voters
+				votesCache.asMap().computeIfPresent(voteMsgId,
+						(messageId, cached) -> cached.with(cached.vote.withVoterAnswers(voterId, votes)));
 			}
-			trans.con.commit();
 		} catch (SQLException e) {
 			logAndThrow("Cant update votes", e);
 		}
-		votesCache.invalidate(Pair.of(trans.serverId, voteMsgId));
+		return true;
+	}
+
+	/**
+	 * Locks the vote first, so two answers of the voter can't both pass the check. Only used for votes that forbid
+	 * changes, so the answers of a busy vote can still be saved in parallel.
+	 */
+	private boolean hasVoted(final Transaction trans, final long voterId, final long voteMsgId) {
+		try (PreparedStatement lockStmt = trans.connection()
+				.prepareStatement("SELECT messageId FROM votes WHERE messageId = ? FOR UPDATE");
+				PreparedStatement votedStmt = trans.connection()
+						.prepareStatement("SELECT voteOptionId FROM voters_votes WHERE voterId = ? AND "
+								+ "voteOptionId IN (SELECT id FROM vote_options WHERE messageId = ?) LIMIT 1 FOR UPDATE")) {
+			lockStmt.setLong(1, voteMsgId);
+			try (ResultSet rs = lockStmt.executeQuery()) {
+				if (!rs.next()) {
+					throw new NotFoundException("Unknown vote " + voteMsgId);
+				}
+			}
+			// A locking read, so it sees answers committed while this transaction waited for the lock
+			votedStmt.setLong(1, voterId);
+			votedStmt.setLong(2, voteMsgId);
+			try (ResultSet rs = votedStmt.executeQuery()) {
+				return rs.next();
+			}
+		} catch (SQLException e) {
+			return logAndThrow("Cant check the votes of voter " + voterId, e);
+		}
+	}
+
+	private Object voteWriteLock(final long voteMsgId) {
+		return voteWriteLocks[Math.floorMod(Long.hashCode(voteMsgId), voteWriteLocks.length)];
+	}
+
+	/**
+	 * Votes of the server with the text in their title. Titles starting with the text come first, then the votes
+	 * ending last.
+	 */
+	public List<VoteTitle> searchVoteTitles(final Transaction trans, final String text, final int limit) {
+		final String lowerCaseText = text.trim().toLowerCase(Locale.ROOT);
+		final Map<Long, VoteTitle> titles = voteTitlesCache.get(trans.serverId, serverId -> loadVoteTitles(trans));
+		return titles.values().stream().filter(title -> title.lowerCaseTitle.contains(lowerCaseText))
+				.sorted(Comparator.comparing((VoteTitle title) -> !title.lowerCaseTitle.startsWith(lowerCaseText))
+						.thenComparing(title -> title.endTime, Comparator.reverseOrder()))
+				.limit(limit).collect(Collectors.toUnmodifiableList());
+	}
+
+	/**
+	 * Must be called after the commit and before the cache is updated.
+	 */
+	private void markWrittenDuringWarmUp(final long voteMsgId) {
+		if (warmUpRunning) {
+			writtenDuringWarmUp.add(voteMsgId);
+		}
+	}
+
+	/**
+	 * Loads all running votes of the server into the cache with three queries, so the first clicks after a restart
+	 * don't need to load every vote on its own. Votes which are cached already are kept. Returns the number of newly
+	 * cached votes.
+	 */
+	public int warmUpVotes(final Transaction trans, final long now) {
+		synchronized (warmUpLock) {
+			writtenDuringWarmUp.clear();
+			warmUpRunning = true;
+			try {
+				final Map<Long, Vote> votes = loadRunningVotes(trans, now);
+				int cached = 0;
+				for (final Map.Entry<Long, Vote> vote : votes.entrySet()) {
+					final CachedVote newCached = new CachedVote(trans.serverId, vote.getValue());
+					// Votes changed since the queries ran would be stale, so they are loaded on their first use instead
+					if (votesCache.asMap().computeIfAbsent(vote.getKey(),
+							messageId -> writtenDuringWarmUp.contains(messageId) ? null : newCached) == newCached) {
+						cached++;
+					}
+				}
+				return cached;
+			} finally {
+				warmUpRunning = false;
+				writtenDuringWarmUp.clear();
+			}
+		}
+	}
+
+	private Map<Long, Vote> loadRunningVotes(final Transaction trans, final long now) {
+		final String runningVotes = "SELECT messageId FROM votes WHERE serverId = ? AND endTime >= ?";
+		final String timezoneId = getDefaultSettings(trans).timezoneId;
+		try (PreparedStatement votersStmt = trans.connection().prepareStatement(
+				"SELECT vv.voteOptionId, vv.voterId FROM voters_votes vv JOIN vote_options o ON o.id = vv.voteOptionId "
+						+ "WHERE o.messageId IN (" + runningVotes + ") ORDER BY 1, 2");
+				PreparedStatement optionsStmt = trans.connection().prepareStatement(
+						"SELECT messageId, id, title FROM vote_options WHERE messageId IN (" + runningVotes
+								+ ") ORDER BY 1, 2");
+				PreparedStatement votesStmt = trans.connection().prepareStatement(
+						"SELECT messageId, channelId, title, description, start, votesPerVoter, durationSeconds, voterCanChangeVotes "
+								+ "FROM votes WHERE serverId = ? AND endTime >= ?")) {
+			// Large servers can have many voters, so let the driver stream the rows instead of reading all at once
+			for (final PreparedStatement stmt : List.of(votersStmt, optionsStmt, votesStmt)) {
+				stmt.setLong(1, trans.serverId);
+				stmt.setLong(2, now);
+				stmt.setFetchSize(1000);
+			}
+
+			final Map<Long, VoterIds.Builder> votersVotes = new HashMap<>();
+			try (ResultSet rs = votersStmt.executeQuery()) {
+				while (rs.next()) {
+					votersVotes.computeIfAbsent(rs.getLong(1), optionId -> new VoterIds.Builder()).add(rs.getLong(2));
+				}
+			}
+
+			final Map<Long, List<VoteOption>> options = new HashMap<>();
+			try (ResultSet rs = optionsStmt.executeQuery()) {
+				while (rs.next()) {
+					final long voteOptionId = rs.getLong(2);
+					final @CheckForNull VoterIds.Builder voters = votersVotes.get(voteOptionId);
+					options.computeIfAbsent(rs.getLong(1), messageId -> new ArrayList<>()).add(new VoteOption(
+							voteOptionId, rs.getString(3), voters != null ? voters.build() : VoterIds.empty()));
+				}
+			}
+
+			final Map<Long, Vote> votes = new HashMap<>();
+			try (ResultSet rs = votesStmt.executeQuery()) {
+				while (rs.next()) {
+					final long messageId = rs.getLong(1);
+					final @CheckForNull List<VoteOption> voteOptions = options.get(messageId);
+					if (voteOptions == null) {
+						continue; // Inserted after the options were read
+					}
+					votes.put(messageId,
+							new Vote(createVoteSettings(timezoneId, rs, 6), rs.getLong(2), rs.getString(3),
+									rs.getString(4), Instant.ofEpochSecond(rs.getLong(5)),
+									Collections.unmodifiableList(voteOptions)));
+				}
+			}
+			return votes;
+		} catch (SQLException e) {
+			return logAndThrow("Cant load running votes for server " + trans.serverId, e);
+		}
 	}
 
 	public Collection<Long> getAllServerVoteIds(final Transaction trans) {
 		Validate.notNull(trans);
-		try (final PreparedStatement stmt = trans.con
+		try (final PreparedStatement stmt = trans.connection()
 				.prepareStatement("SELECT messageId FROM votes WHERE serverId = ?")) {
 			stmt.setLong(1, trans.serverId);
 			final Set<Long> ids = new HashSet<>();
@@ -328,17 +832,20 @@ public class Db {
 	}
 
 	public Collection<Pair<Long, Long>> getVotesToLastUpdate(final long timestamp) {
-		try (Connection con = dataSource.getConnection();
-				PreparedStatement stmt = con.prepareStatement(
-						"SELECT serverId, messageId FROM votes WHERE lastEditMade = 0 AND start + durationSeconds < ?")) {
-			stmt.setLong(1, timestamp);
-			try (ResultSet rs = stmt.executeQuery()) {
-				final List<Pair<Long, Long>> result = new ArrayList<>();
-				while (rs.next()) {
-					result.add(Pair.of(rs.getLong(1), rs.getLong(2)));
+		try (Connection con = dataSource.getConnection()) {
+			con.setReadOnly(true);
+			try (PreparedStatement stmt = con
+					.prepareStatement("SELECT serverId, messageId FROM votes WHERE lastEditMade = 0 AND endTime < ?")) {
+				stmt.setLong(1, timestamp);
+				try (ResultSet rs = stmt.executeQuery()) {
+					final List<Pair<Long, Long>> result = new ArrayList<>();
+					while (rs.next()) {
+						result.add(Pair.of(rs.getLong(1), rs.getLong(2)));
+					}
+					// Ends the read snapshot. Hikari would send the same rollback when the connection is returned.
+					con.rollback();
+					return result;
 				}
-				con.rollback();
-				return result;
 			}
 		} catch (SQLException e) {
 			return logAndThrow("Cant fetch to last edit votes", e);
@@ -361,13 +868,23 @@ public class Db {
 		}
 	}
 
-	public void saveToUpdateVotes(final Collection<Pair<Long, Long>> serverAndMessageIds) {
+	/**
+	 * Replaces the saved update backlog in one transaction.
+	 */
+	public void saveToUpdateVotes(final Collection<ToUpdateVote> toUpdateVotes) {
 		try (Connection con = dataSource.getConnection();
-				PreparedStatement stmt = con
-						.prepareStatement("INSERT INTO to_update_votes(serverId, messageId) VALUES (?,?)")) {
-			for (final Pair<Long, Long> serverAndMessageId : serverAndMessageIds) {
-				stmt.setLong(1, serverAndMessageId.getLeft());
-				stmt.setLong(2, serverAndMessageId.getRight());
+				PreparedStatement delStmt = con.prepareStatement("DELETE FROM to_update_votes");
+				PreparedStatement stmt = con.prepareStatement(
+						"INSERT INTO to_update_votes(serverId, messageId, sentFingerprint) VALUES (?,?,?)")) {
+			delStmt.executeUpdate();
+			for (final ToUpdateVote toUpdateVote : toUpdateVotes) {
+				stmt.setLong(1, toUpdateVote.serverId);
+				stmt.setLong(2, toUpdateVote.messageId);
+				if (toUpdateVote.sentFingerprint != null) {
+					stmt.setLong(3, toUpdateVote.sentFingerprint);
+				} else {
+					stmt.setNull(3, Types.BIGINT);
+				}
 				stmt.addBatch();
 			}
 			stmt.executeBatch();
@@ -377,43 +894,109 @@ public class Db {
 		}
 	}
 
-	public Collection<Pair<Long, Long>> loadAndDeleteToUpdateVotes(final long serverId) {
-		try (Connection con = dataSource.getConnection();
-				PreparedStatement selStmt = con
-						.prepareStatement("SELECT serverId, messageId FROM to_update_votes WHERE serverId = ?");
-				PreparedStatement delStmt = con.prepareStatement("DELETE FROM to_update_votes WHERE serverId = ?")) {
-			selStmt.setLong(1, serverId);
-			final List<Pair<Long, Long>> result = new ArrayList<>();
-			try (ResultSet rs = selStmt.executeQuery()) {
+	/**
+	 * Loads the saved update backlog of all servers in one transaction, instead of one transaction per server. The
+	 * backlog stays saved until saveToUpdateVotes() replaces it, so it isn't lost when the bot fails before that.
+	 */
+	public Collection<ToUpdateVote> loadAllToUpdateVotes() {
+		try (Connection con = dataSource.getConnection()) {
+			con.setReadOnly(true);
+			try (PreparedStatement stmt = con
+					.prepareStatement("SELECT serverId, messageId, sentFingerprint FROM to_update_votes");
+					ResultSet rs = stmt.executeQuery()) {
+				final List<ToUpdateVote> result = new ArrayList<>();
 				while (rs.next()) {
-					result.add(Pair.of(rs.getLong(1), rs.getLong(2)));
+					result.add(new ToUpdateVote(rs.getLong(1), rs.getLong(2), rs.getObject(3, Long.class)));
 				}
+				// Ends the read snapshot. Hikari would send the same rollback when the connection is returned.
+				con.rollback();
+				return result;
 			}
-
-			delStmt.setLong(1, serverId);
-			delStmt.executeUpdate();
-			con.commit();
-
-			return result;
 		} catch (SQLException e) {
 			return logAndThrow("Cant load to update votes", e);
 		}
 	}
 
-	public int deleteOldVotes(final long deleteBefore) {
+	/**
+	 * Deletes at most maxVotes ended votes with their options and answers in one transaction. Callers should repeat
+	 * this until less than maxVotes votes were deleted.
+	 */
+	public DeletedRows deleteOldVotes(final long deleteBefore, final int maxVotes) {
+		Validate.inclusiveBetween(1, Integer.MAX_VALUE, maxVotes);
 		try (Connection con = dataSource.getConnection();
-				PreparedStatement stmt = con.prepareStatement("DELETE FROM votes WHERE start + durationSeconds < ?")) {
-			stmt.setLong(1, deleteBefore);
-			final int deletedVotes = stmt.executeUpdate();
-			con.commit();
-			return deletedVotes;
+				PreparedStatement selStmt = con.prepareStatement(
+						"SELECT serverId, messageId FROM votes WHERE endTime < ? ORDER BY endTime LIMIT ?")) {
+			selStmt.setLong(1, deleteBefore);
+			selStmt.setInt(2, maxVotes);
+			final List<Pair<Long, Long>> toDelete = new ArrayList<>();
+			try (ResultSet rs = selStmt.executeQuery()) {
+				while (rs.next()) {
+					toDelete.add(Pair.of(rs.getLong(1), rs.getLong(2)));
+				}
+			}
+			if (toDelete.isEmpty()) {
+				con.rollback();
+				return DeletedRows.NONE;
+			}
+
+			final String idList = String.join(",", Collections.nCopies(toDelete.size(), "?"));
+			try (PreparedStatement votersVotesStmt = con.prepareStatement(
+					"DELETE FROM voters_votes WHERE voteOptionId IN (SELECT id FROM vote_options WHERE messageId IN ("
+							+ idList + "))");
+					PreparedStatement voteOptionsStmt = con
+							.prepareStatement("DELETE FROM vote_options WHERE messageId IN (" + idList + ")");
+					PreparedStatement votesStmt = con
+							.prepareStatement("DELETE FROM votes WHERE messageId IN (" + idList + ")")) {
+				for (int i = 0; i < toDelete.size(); ++i) {
+					final long messageId = toDelete.get(i).getRight();
+					votersVotesStmt.setLong(i + 1, messageId);
+					voteOptionsStmt.setLong(i + 1, messageId);
+					votesStmt.setLong(i + 1, messageId);
+				}
+				final int votersVotes = votersVotesStmt.executeUpdate();
+				final int voteOptions = voteOptionsStmt.executeUpdate();
+				final DeletedRows deleted = new DeletedRows(votesStmt.executeUpdate(), voteOptions, votersVotes);
+				con.commit();
+				for (final Pair<Long, Long> vote : toDelete) {
+					votesCache.invalidate(vote.getRight());
+					updateVoteTitles(vote.getLeft(), titles -> titles.remove(vote.getRight()));
+				}
+				return deleted;
+			}
 		} catch (SQLException e) {
 			return logAndThrow("Cant delete old votes", e);
 		}
 	}
 
-	/*package for test*/ void forTestResetCaches() {
+	public long leakedTransactions() {
+		return leakedTransactions.get();
+	}
+
+	public long voteCacheEvictions() {
+		return votesCache.stats().evictionCount();
+	}
+
+	/**
+	 * Current weight of all cached votes, see db.voteCacheMaxWeight.
+	 */
+	public long voteCacheWeight() {
+		// Pending writes are only applied to the weight during cache maintenance
+		votesCache.cleanUp();
+		return votesCache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+	}
+
+	/*package for test*/ Optional<Duration> forTestVoteExpiresAfter(final long voteMsgId) {
+		return votesCache.policy().expireVariably().flatMap(expiry -> expiry.getExpiresAfter(voteMsgId));
+	}
+
+	/*package for test*/ void forTestResetVotesCache() {
+		votesCache.invalidateAll();
+	}
+
+	public void forTestResetCaches() {
 		defaultSettingsCache.invalidateAll();
 		votesCache.invalidateAll();
+		voteTitlesCache.invalidateAll();
+		unknownVotesCache.invalidateAll();
 	}
 }
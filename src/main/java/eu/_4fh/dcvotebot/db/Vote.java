@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 import org.apache.commons.lang3.Validate;
 
@@ -60,6 +61,18 @@ public class Vote {
 		this.options = options;
 	}
 
+	/*package*/ Vote withEdit(final Vote editedVote) {
+		return new Vote(editedVote.settings, channelId, editedVote.title, editedVote.description, start, options);
+	}
+
+	/*package*/ Vote withVoterAnswers(final long voterId, final Set<Long> voteOptionIds) {
+		final List<VoteOption> newOptions = new ArrayList<>(options.size());
+		for (final VoteOption option : options) {
+			newOptions.add(option.withVoter(voterId, voteOptionIds.contains(option.id)));
+		}
+		return new Vote(settings, channelId, title, description, start, Collections.unmodifiableList(newOptions));
+	}
+
 	@Override
 	public int hashCode() {
 		return Objects.hash(channelId, description, options, settings, start, title);
@@ -1,8 +1,6 @@
 package eu._4fh.dcvotebot.db;
 
-import java.util.Collections;
 import java.util.Objects;
-import java.util.Set;
 
 import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -11,18 +9,25 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 public class VoteOption {
 	public final long id;
 	public final String name;
-	public final Set<Long> voters;
+	public final VoterIds voters;
 
 	public static VoteOption create(final String name) {
-		return new VoteOption(0, name, Collections.emptySet());
+		return new VoteOption(0, name, VoterIds.empty());
 	}
 
-	/*package*/ VoteOption(final long id, final String name, final Set<Long> voters) {
+	/*package*/ VoteOption(final long id, final String name, final VoterIds voters) {
 		this.id = id;
 		this.name = name;
 		this.voters = voters;
 	}
 
+	/*package*/ VoteOption withVoter(final long voterId, final boolean isVoter) {
+		if (voters.contains(voterId) == isVoter) {
+			return this;
+		}
+		return new VoteOption(id, name, isVoter ? voters.with(voterId) : voters.without(voterId));
+	}
+
 	@Override
 	public int hashCode() {
 		return Objects.hash(id, name, voters);
@@ -0,0 +1,49 @@
+package eu._4fh.dcvotebot.db;
+
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Objects;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Entry of the per-server title index, which is used to search votes without loading them.
+ */
+@DefaultAnnotation(NonNull.class)
+public class VoteTitle {
+	public final long messageId;
+	public final String title;
+	public final Instant endTime;
+	/*package*/ final String lowerCaseTitle;
+
+	/*package*/ VoteTitle(final long messageId, final String title, final Instant endTime) {
+		this.messageId = messageId;
+		this.title = title;
+		this.endTime = endTime;
+		this.lowerCaseTitle = title.toLowerCase(Locale.ROOT);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(messageId, title, endTime);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof VoteTitle)) {
+			return false;
+		}
+		VoteTitle other = (VoteTitle) obj;
+		return messageId == other.messageId && Objects.equals(title, other.title)
+				&& Objects.equals(endTime, other.endTime);
+	}
+
+	@Override
+	public String toString() {
+		return "VoteTitle [messageId=" + messageId + ", title=" + title + ", endTime=" + endTime + "]";
+	}
+}
@@ -1,7 +1,10 @@
 package eu._4fh.dcvotebot.discord;
 
 import java.util.Locale;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
 
 import org.apache.commons.lang3.Validate;
 
@@ -12,7 +15,11 @@ import com.github.benmanes.caffeine.cache.Scheduler;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import eu._4fh.dcvotebot.db.Db.NotFoundException;
+import eu._4fh.dcvotebot.util.CacheMetrics;
 import eu._4fh.dcvotebot.util.Config;
+import eu._4fh.dcvotebot.util.Log;
+import eu._4fh.dcvotebot.util.TryAgainLaterException;
 import net.dv8tion.jda.api.events.interaction.ModalInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.component.GenericComponentInteractionCreateEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
@@ -23,7 +30,11 @@ import net.dv8tion.jda.api.interactions.commands.build.SlashCommandData;
 public abstract class AbstractCommandHandler<T> extends ListenerAdapter {
 	private static final Cache<String, Object> objectCache = Caffeine.newBuilder()
 			.expireAfterWrite(Config.instance().interactionTimeout, TimeUnit.MINUTES)
-			.scheduler(Scheduler.systemScheduler()).build();
+			.scheduler(Scheduler.systemScheduler()).recordStats().build();
+
+	static {
+		CacheMetrics.register("interactions", objectCache);
+	}
 
 	protected static final String ID_SEPERATOR = "_";
 
@@ -83,4 +94,23 @@ public abstract class AbstractCommandHandler<T> extends ListenerAdapter {
 	protected String generateComponentId(final String subPrefix) {
 		return idPrefix + subPrefix;
 	}
+
+	/**
+	 * Answers the user after a failed AsyncDb call. Meant to be used in CompletableFuture.exceptionally.
+	 */
+	protected @CheckForNull Void handleDbFailure(final Throwable failure, final String notFoundMsg,
+			final Consumer<String> reply) {
+		final Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+				? failure.getCause()
+				: failure;
+		if (cause instanceof NotFoundException) {
+			reply.accept(notFoundMsg);
+		} else if (cause instanceof TryAgainLaterException) {
+			reply.accept("The bot is busy right now. Please try again in a moment.");
+		} else {
+			Log.getLog(this).log(Level.SEVERE, "Database call failed", cause);
+			reply.accept("Sorry, something went wrong. Please try again.");
+		}
+		return null;
+	}
 }
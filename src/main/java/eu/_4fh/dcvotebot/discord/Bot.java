@@ -2,12 +2,17 @@ package eu._4fh.dcvotebot.discord;
 
 import java.time.Duration;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import eu._4fh.dcvotebot.db.AsyncDb;
 import eu._4fh.dcvotebot.util.Config;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
 import net.dv8tion.jda.api.interactions.commands.build.CommandData;
 import net.dv8tion.jda.api.utils.ChunkingFilter;
@@ -19,13 +24,15 @@ public class Bot implements AutoCloseable {
 	private final int shardId;
 	private final DoVoteHandler doVoteHandler;
 	private final VoteUpdateHandler voteUpdateHandler;
+	private final AbstractCommandHandler<?>[] commands;
 
 	public Bot(final int shardId, final int shardTotal) {
 		this.shardId = shardId;
 		voteUpdateHandler = new VoteUpdateHandler(this);
+		voteUpdateHandler.loadSavedTodos();
 
 		doVoteHandler = new DoVoteHandler(this);
-		final AbstractCommandHandler<?>[] commands = { new CreateVoteHandler(this), doVoteHandler,
+		commands = new AbstractCommandHandler<?>[] { new CreateVoteHandler(this), doVoteHandler,
 				new EditVoteHandler(this), new VoteSettingsDefaultCommand(this),
 				new StatsCommand(this, voteUpdateHandler) };
 
@@ -57,9 +64,10 @@ public class Bot implements AutoCloseable {
 
 	@Override
 	public void close() {
-		if (voteUpdateHandler != null) {
-			voteUpdateHandler.close();
+		if (jda != null) {
+			jda.removeEventListener((Object[]) commands);
 		}
+		saveRunningWork(AsyncDb.instance(), voteUpdateHandler);
 		if (jda != null) {
 			jda.shutdown();
 			try {
@@ -74,8 +82,38 @@ public class Bot implements AutoCloseable {
 		}
 	}
 
-	/*package*/ void updateMessage(final long serverId, final long channelId, final long messageId, final String text) {
-		jda.getGuildById(serverId).getTextChannelById(channelId).editMessageById(messageId, text).complete();
+	/**
+	 * Queued answers and edits queue message updates and answer the user through JDA, so they must be done before the
+	 * update queue is saved and before JDA is shut down.
+	 */
+	/*package for test*/ static void saveRunningWork(final AsyncDb asyncDb,
+			final @CheckForNull VoteUpdateHandler voteUpdateHandler) {
+		asyncDb.shutdown();
+		if (voteUpdateHandler != null) {
+			voteUpdateHandler.close();
+		}
+	}
+
+	/**
+	 * Doesn't wait for discord, so a slow channel doesn't block the caller.
+	 */
+	/*package*/ CompletableFuture<Void> updateMessage(final long serverId, final long channelId, final long messageId,
+			final String text) {
+		final @CheckForNull Guild guild = jda.getGuildById(serverId);
+		final @CheckForNull TextChannel channel = guild != null ? guild.getTextChannelById(channelId) : null;
+		if (channel == null) {
+			return CompletableFuture
+					.failedFuture(new IllegalStateException("Unknown channel " + channelId + " on server " + serverId));
+		}
+		return channel.editMessageById(messageId, text).submit().thenAccept(message -> {
+		});
+	}
+
+	/**
+	 * True for available and unavailable guilds of this shard, false after the bot left the guild.
+	 */
+	/*package*/ boolean isGuildKnown(final long guildId) {
+		return jda.getGuildById(guildId) != null || jda.isUnavailable(guildId);
 	}
 
 	public long getShardId() {
@@ -3,13 +3,11 @@ package eu._4fh.dcvotebot.discord;
 import java.time.Duration;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.Formatter;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
+import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -17,10 +15,11 @@ import java.util.stream.Collectors;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
 import edu.umd.cs.findbugs.annotations.NonNull;
-import eu._4fh.dcvotebot.db.Db;
-import eu._4fh.dcvotebot.db.Db.Transaction;
+import eu._4fh.dcvotebot.db.AsyncDb;
 import eu._4fh.dcvotebot.db.Vote;
 import eu._4fh.dcvotebot.db.VoteOption;
+import eu._4fh.dcvotebot.db.VoterIds;
+import eu._4fh.dcvotebot.util.Log;
 import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
 import net.dv8tion.jda.api.interactions.commands.Command;
 import net.dv8tion.jda.api.interactions.commands.OptionMapping;
@@ -76,11 +75,9 @@ import net.dv8tion.jda.api.interactions.commands.build.SlashCommandData;
 		final Formatter numberFormatter = new Formatter(result, Locale.ROOT);
 		final int bulletCode = 0x2022;
 		final int arrowCode = 0x2192;
-		final Set<Long> voters = new HashSet<>();
-		final long votes = vote.options.stream().filter(option -> {
-			voters.addAll(option.voters);
-			return true;
-		}).collect(Collectors.summingLong(option -> option.voters.size()));
+		final VoterIds voters = VoterIds
+				.union(vote.options.stream().map(option -> option.voters).collect(Collectors.toList()));
+		final long votes = vote.options.stream().collect(Collectors.summingLong(option -> option.voters.size()));
 
 		result.append("**").append(vote.title).append("**\n\n").append(vote.description).append("\n\n");
 
@@ -190,13 +187,15 @@ import net.dv8tion.jda.api.interactions.commands.build.SlashCommandData;
 	}
 
 	/*package*/ static void autoCompleteVotes(CommandAutoCompleteInteractionEvent event) {
-		final Db db = Db.instance();
-		try (Transaction trans = db.getTransaction(event.getGuild().getIdLong())) {
-			final Collection<Long> allVoteIds = db.getAllServerVoteIds(trans);
-			final List<Command.Choice> allChoices = new ArrayList<>(allVoteIds.size());
-			allVoteIds.stream()
-					.forEach(voteId -> allChoices.add(new Command.Choice(db.getVote(trans, voteId).title, voteId)));
-			event.replyChoices(allChoices).queue();
-		}
+		final String typed = event.getFocusedOption().getValue();
+		AsyncDb.instance().read(event.getGuild().getIdLong(), (db, trans) -> {
+			// Uses the title index, because this runs on every keystroke
+			return db.searchVoteTitles(trans, typed, OptionData.MAX_CHOICES).stream()
+					.map(title -> new Command.Choice(title.title, title.messageId)).collect(Collectors.toList());
+		}).thenAccept(choices -> event.replyChoices(choices).queue()).exceptionally(t -> {
+			Log.getLog(CommandUtil.class).log(Level.WARNING, "Cant autocomplete votes", t);
+			event.replyChoices(Collections.emptyList()).queue();
+			return null;
+		});
 	}
 }
@@ -9,8 +9,7 @@ import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import eu._4fh.dcvotebot.db.Db;
-import eu._4fh.dcvotebot.db.Db.Transaction;
+import eu._4fh.dcvotebot.db.AsyncDb;
 import eu._4fh.dcvotebot.db.Vote;
 import eu._4fh.dcvotebot.db.VoteOption;
 import eu._4fh.dcvotebot.db.VoteSettings;
@@ -125,16 +124,22 @@ import net.dv8tion.jda.api.interactions.modals.ModalMapping;
 				.filter(option -> option != null && !option.isBlank()).map(VoteOption::create)
 				.collect(Collectors.toUnmodifiableList());
 
-		final Db db = Db.instance();
-		final VoteSettings settings;
-		final Vote vote;
-		try (Transaction trans = db.getTransaction(event.getGuild().getIdLong())) {
-			final VoteSettings defaultSettings = db.getDefaultSettings(trans);
-			settings = VoteSettings.createWithDefaults(createVoteData.duration, createVoteData.votesPerUser,
-					createVoteData.canChangeVote, defaultSettings);
-			vote = Vote.create(settings, event.getChannel().getIdLong(), createVoteData.title,
-					createVoteData.description, options);
-		}
+		final long serverId = event.getGuild().getIdLong();
+		final long channelId = event.getChannel().getIdLong();
+		AsyncDb.instance().read(serverId, (db, trans) -> db.getDefaultSettings(trans))
+				.thenAccept(defaultSettings -> createVote(event, createVoteData, options, serverId, channelId,
+						defaultSettings))
+				.exceptionally(t -> handleDbFailure(t, "This server is unknown to the bot.",
+						msg -> event.reply(msg).setEphemeral(true).queue()));
+	}
+
+	private void createVote(final ModalInteractionEvent event, final CreateVoteData createVoteData,
+			final List<VoteOption> options, final long serverId, final long channelId,
+			final VoteSettings defaultSettings) {
+		final VoteSettings settings = VoteSettings.createWithDefaults(createVoteData.duration,
+				createVoteData.votesPerUser, createVoteData.canChangeVote, defaultSettings);
+		final Vote vote = Vote.create(settings, channelId, createVoteData.title, createVoteData.description,
+				options);
 
 		final String messageText = CommandUtil.createVoteText(vote);
 		if (messageText.length() >= 2000) {
@@ -145,14 +150,15 @@ import net.dv8tion.jda.api.interactions.modals.ModalMapping;
 			return;
 		}
 
-		event.deferReply(false).complete();
-		final long messageId = event.getHook().retrieveOriginal().complete().getIdLong();
-
-		try (Transaction trans = db.getTransaction(event.getGuild().getIdLong())) {
-			db.insertVote(trans, messageId, vote);
-			event.getHook().sendMessage(messageText)
-					.addActionRow(Button.primary(generateComponentId(START_VOTE_BUTTON_PREFIX), "Select Answer"))
-					.queue();
-		}
+		event.deferReply(false).submit().thenCompose(hook -> hook.retrieveOriginal().submit())
+				.thenCompose(message -> AsyncDb.instance().write(serverId, (db, trans) -> {
+					db.insertVote(trans, message.getIdLong(), vote);
+					return null;
+				}))
+				.thenRun(() -> event.getHook().sendMessage(messageText)
+						.addActionRow(Button.primary(generateComponentId(START_VOTE_BUTTON_PREFIX), "Select Answer"))
+						.queue())
+				.exceptionally(t -> handleDbFailure(t, "This server is unknown to the bot.",
+						msg -> event.getHook().sendMessage(msg).queue()));
 	}
 }
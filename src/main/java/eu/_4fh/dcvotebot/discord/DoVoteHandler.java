@@ -6,15 +6,16 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 
 import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
 import edu.umd.cs.findbugs.annotations.NonNull;
-import eu._4fh.dcvotebot.db.Db;
-import eu._4fh.dcvotebot.db.Db.NotFoundException;
-import eu._4fh.dcvotebot.db.Db.Transaction;
+import eu._4fh.dcvotebot.db.AsyncDb;
 import eu._4fh.dcvotebot.db.Vote;
 import eu._4fh.dcvotebot.db.VoteOption;
 import eu._4fh.dcvotebot.discord.DoVoteHandler.VoteData;
+import eu._4fh.dcvotebot.util.Log;
 import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.component.StringSelectInteractionEvent;
 import net.dv8tion.jda.api.interactions.commands.build.SlashCommandData;
@@ -45,7 +46,8 @@ public class DoVoteHandler extends AbstractCommandHandler<VoteData> {
 		return null;
 	}
 
-	/*package for test*/ void handleVote(Db db, ButtonInteractionEvent event, VoteData data, Vote vote) {
+	/*package for test*/ CompletableFuture<Void> handleVote(final ButtonInteractionEvent event, final VoteData data,
+			final Vote vote) {
 		final long voterId = event.getUser().getIdLong();
 		final Set<Long> votersVotes = new HashSet<>();
 		boolean hasAlreadyVoted = false;
@@ -72,15 +74,27 @@ public class DoVoteHandler extends AbstractCommandHandler<VoteData> {
 			event.getHook().editOriginal("You selected more than " + vote.settings.answersPerUser + " answers.")
 					.setComponents(Collections.emptyList()).queue();
 		} else {
-			try (Transaction trans = db.getTransaction(event.getGuild().getIdLong())) {
-				db.updateVoteVotes(trans, voterId, data.voteId, votersVotes);
-			}
-			event.getHook()
-					.editOriginal(
-							"Saved your answer. It could take some minutes until the poll-message shows your answers.")
-					.setComponents(Collections.emptyList()).queue();
-			bot.updateVoteText(event.getGuild().getIdLong(), data.voteId);
+			final long serverId = event.getGuild().getIdLong();
+			return AsyncDb.instance().write(serverId,
+					(db, trans) -> db.updateVoteVotes(trans, voterId, data.voteId, votersVotes)).thenAccept(saved -> {
+				if (!saved) {
+					// Another click of the voter was saved since the vote was read
+					event.getHook().editOriginal("You already voted and can't change your answer.")
+							.setComponents(Collections.emptyList()).queue();
+					return;
+				}
+				event.getHook().editOriginal(
+						"Saved your answer. It could take some minutes until the poll-message shows your answers.")
+						.setComponents(Collections.emptyList()).queue();
+				try {
+					bot.updateVoteText(serverId, data.voteId);
+				} catch (RuntimeException e) {
+					// The answer is saved, so the voter must not be told that something went wrong
+					Log.getLog(this).log(Level.SEVERE, "Cant queue update of vote " + data.voteId, e);
+				}
+			});
 		}
+		return CompletableFuture.completedFuture(null);
 	}
 
 	/*package for test*/ void forTestHandleSendVoteButton(final long userId, final ButtonInteractionEvent event) {
@@ -96,11 +110,10 @@ public class DoVoteHandler extends AbstractCommandHandler<VoteData> {
 		}
 
 		event.deferEdit().queue();
-		final Db db = Db.instance();
-		try (Transaction trans = db.getTransaction(event.getGuild().getIdLong())) {
-			final Vote vote = db.getVote(trans, data.voteId);
-			handleVote(db, event, data, vote);
-		}
+		AsyncDb.instance().read(event.getGuild().getIdLong(), (db, trans) -> db.getVote(trans, data.voteId))
+				.thenCompose(vote -> handleVote(event, data, vote))
+				.exceptionally(t -> handleDbFailure(t, "This poll is already deleted from the bot.",
+						msg -> event.getHook().editOriginal(msg).setComponents(Collections.emptyList()).queue()));
 	}
 
 	@Override
@@ -141,16 +154,14 @@ public class DoVoteHandler extends AbstractCommandHandler<VoteData> {
 	/*package*/ void startVote(final ButtonInteractionEvent event) {
 		event.deferReply(true).queue();
 
-		final Db db = Db.instance();
 		final long voteId = event.getMessageIdLong();
-		final Vote vote;
-		try (Transaction trans = db.getTransaction(event.getGuild().getIdLong())) {
-			vote = db.getVote(trans, voteId);
-		} catch (NotFoundException e) {
-			event.getHook().sendMessage("This poll is already deleted from the bot.").queue();
-			return;
-		}
+		AsyncDb.instance().read(event.getGuild().getIdLong(), (db, trans) -> db.getVote(trans, voteId))
+				.thenAccept(vote -> sendVoteMenu(event, voteId, vote))
+				.exceptionally(t -> handleDbFailure(t, "This poll is already deleted from the bot.",
+						msg -> event.getHook().sendMessage(msg).queue()));
+	}
 
+	private void sendVoteMenu(final ButtonInteractionEvent event, final long voteId, final Vote vote) {
 		final long voterId = event.getUser().getIdLong();
 		final VoteData data = new VoteData(voteId);
 		addCacheObject(voterId, data);
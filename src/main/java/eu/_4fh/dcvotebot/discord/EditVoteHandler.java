@@ -1,16 +1,16 @@
 package eu._4fh.dcvotebot.discord;
 
 import java.time.Duration;
+import java.util.logging.Level;
 
 import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import eu._4fh.dcvotebot.db.Db;
-import eu._4fh.dcvotebot.db.Db.NotFoundException;
-import eu._4fh.dcvotebot.db.Db.Transaction;
+import eu._4fh.dcvotebot.db.AsyncDb;
 import eu._4fh.dcvotebot.db.Vote;
 import eu._4fh.dcvotebot.db.VoteSettings;
 import eu._4fh.dcvotebot.discord.CommandUtil.OptionValueException;
+import eu._4fh.dcvotebot.util.Log;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
@@ -61,21 +61,27 @@ import net.dv8tion.jda.api.interactions.commands.build.SlashCommandData;
 			final Byte votesPerUser = CommandUtil.parseByte(event.getOption("answers-per-user"), (byte) 1, (byte) 25);
 			final Boolean usersCanChangeVotes = CommandUtil.parseBoolean(event.getOption("users-can-change-answer"));
 
-			final Db db = Db.instance();
-			try (Transaction trans = db.getTransaction(event.getGuild().getIdLong())) {
-				final long voteId = event.getOption("poll", 0L, OptionMapping::getAsLong);
+			final long serverId = event.getGuild().getIdLong();
+			final long voteId = event.getOption("poll", 0L, OptionMapping::getAsLong);
+			AsyncDb.instance().write(serverId, (db, trans) -> {
 				final Vote vote = db.getVote(trans, voteId);
 				final VoteSettings newSettings = VoteSettings.createWithDefaults(duration, votesPerUser,
 						usersCanChangeVotes, vote.settings);
 				final Vote newVote = Vote.createWithDefaults(newSettings, title, description, vote);
 				db.updateVote(trans, voteId, newVote);
+				return null;
+			}).thenRun(() -> {
 				event.getHook().sendMessage("Updated the poll. It could take some minutes to show up.").queue();
-				bot.updateVoteText(event.getGuild().getIdLong(), voteId);
-			}
+				try {
+					bot.updateVoteText(serverId, voteId);
+				} catch (RuntimeException e) {
+					// The edit is saved, so the user must not be told that something went wrong
+					Log.getLog(this).log(Level.SEVERE, "Cant queue update of vote " + voteId, e);
+				}
+			}).exceptionally(t -> handleDbFailure(t, "Cant find the poll you tried to edit",
+					msg -> event.getHook().sendMessage(msg).queue()));
 		} catch (OptionValueException e) {
 			event.getHook().sendMessage(e.getMessage()).queue();
-		} catch (NotFoundException e) {
-			event.getHook().sendMessage("Cant find the poll you tried to edit").queue();
 		}
 	}
 }
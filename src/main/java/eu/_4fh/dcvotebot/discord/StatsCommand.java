@@ -1,12 +1,23 @@
 package eu._4fh.dcvotebot.discord;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
 
 import org.apache.commons.lang3.time.DurationFormatUtils;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import eu._4fh.dcvotebot.db.AsyncDb;
+import eu._4fh.dcvotebot.db.Db;
+import eu._4fh.dcvotebot.util.AdaptiveRate;
+import eu._4fh.dcvotebot.util.CacheMetrics;
 import eu._4fh.dcvotebot.util.Config;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.interactions.commands.DefaultMemberPermissions;
@@ -38,11 +49,38 @@ public class StatsCommand extends AbstractCommandHandler<Void> {
 		}
 
 		final long todoSize = voteUpdateHandler.todoQueueLength();
-		final long expectedToUpdateTimeMillis = Duration.ofMillis(Config.instance().updateIntervalMilliseconds)
-				.multipliedBy(todoSize).toMillis();
+		final AdaptiveRate editRate = voteUpdateHandler.editRate();
+		final double editsPerSecond = editRate.perSecond();
+		final long expectedToUpdateTimeMillis = (long) (todoSize * 1000d / editsPerSecond);
+		final @CheckForNull Instant lastBackoff = editRate.lastBackoff();
 		final String msg = "Expected time to update a poll: "
 				+ DurationFormatUtils.formatDuration(expectedToUpdateTimeMillis, "HH:mm:ss")
-				+ "\nGuilds on this shard: " + voteUpdateHandler.numShardGuilds();
+				+ String.format(Locale.ROOT, "\nMessage updates: %.1f/s (%d - %d/s)", editsPerSecond,
+						Config.instance().updateMinEditsPerSecond, Config.instance().updateMaxEditsPerSecond)
+				+ "\nMessage update backoffs: " + editRate.backoffs()
+				+ (lastBackoff == null ? ""
+						: ", last " + DurationFormatUtils.formatDuration(
+								Duration.between(lastBackoff, Instant.now()).toMillis(), "HH:mm:ss") + " ago")
+				+ "\nSkipped unchanged message updates: " + voteUpdateHandler.skippedUpdates()
+				+ "\nGuilds on this shard: " + voteUpdateHandler.numShardGuilds() + "\nLeaked db transactions: "
+				+ Db.instance().leakedTransactions() + "\nVote cache weight: " + Db.instance().voteCacheWeight() + " / "
+				+ Config.instance().voteCacheMaxWeight + "\nVote cache evictions: " + Db.instance().voteCacheEvictions()
+				+ "\nWaiting db calls: " + AsyncDb.instance().queueLength()
+				+ String.format(Locale.ROOT, "\nAverage wait for db calls: %.1f ms",
+						AsyncDb.instance().averageWaitMillis())
+				+ cacheStats();
 		event.reply(msg).setEphemeral(true).queue();
 	}
+
+	private String cacheStats() {
+		final StringBuilder result = new StringBuilder();
+		for (final Map.Entry<String, Cache<?, ?>> cache : CacheMetrics.caches().entrySet()) {
+			final CacheStats stats = cache.getValue().stats();
+			result.append(String.format(Locale.ROOT,
+					"\nCache %s: %.1f%% hits, %.1f%% misses, %.1f ms per load, %d evictions, %d entries",
+					cache.getKey(), stats.hitRate() * 100d, stats.missRate() * 100d,
+					stats.averageLoadPenalty() / 1_000_000d, stats.evictionCount(), cache.getValue().estimatedSize()));
+		}
+		return result.toString();
+	}
 }
@@ -8,8 +8,7 @@ import java.util.Optional;
 import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import eu._4fh.dcvotebot.db.Db;
-import eu._4fh.dcvotebot.db.Db.Transaction;
+import eu._4fh.dcvotebot.db.AsyncDb;
 import eu._4fh.dcvotebot.db.VoteSettings;
 import eu._4fh.dcvotebot.discord.CommandUtil.OptionValueException;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
@@ -57,11 +56,12 @@ public class VoteSettingsDefaultCommand extends AbstractCommandHandler<Void> {
 			final VoteSettings settings = VoteSettings.create(duration, votesPerUser.byteValue(),
 					usersCanChangeVote.booleanValue(), timezone);
 
-			final Db db = Db.instance();
-			try (Transaction trans = db.getTransaction(event.getGuild().getIdLong())) {
+			AsyncDb.instance().write(event.getGuild().getIdLong(), (db, trans) -> {
 				db.setDefaultSettings(trans, settings);
-			}
-			event.getHook().sendMessage("Done").queue();
+				return null;
+			}).thenRun(() -> event.getHook().sendMessage("Done").queue())
+					.exceptionally(t -> handleDbFailure(t, "This server is unknown to the bot.",
+							msg -> event.getHook().sendMessage(msg).queue()));
 		} catch (OptionValueException e) {
 			event.getHook().sendMessage(e.getMessage()).queue();
 		} catch (DateTimeException e) {
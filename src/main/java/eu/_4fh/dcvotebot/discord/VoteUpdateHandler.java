@@ -1,23 +1,41 @@
 package eu._4fh.dcvotebot.discord;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.tuple.Pair;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Scheduler;
+
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -25,75 +43,202 @@ import eu._4fh.dcvotebot.db.Db;
 import eu._4fh.dcvotebot.db.Db.NotFoundException;
 import eu._4fh.dcvotebot.db.Db.Transaction;
 import eu._4fh.dcvotebot.db.Vote;
+import eu._4fh.dcvotebot.util.AdaptiveRate;
+import eu._4fh.dcvotebot.util.CacheMetrics;
 import eu._4fh.dcvotebot.util.Config;
 import eu._4fh.dcvotebot.util.Log;
+import eu._4fh.dcvotebot.util.TokenBucket;
 import net.dv8tion.jda.api.events.guild.GuildAvailableEvent;
 import net.dv8tion.jda.api.events.guild.GuildJoinEvent;
 import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
 import net.dv8tion.jda.api.events.guild.GuildReadyEvent;
 import net.dv8tion.jda.api.events.guild.GuildTimeoutEvent;
 import net.dv8tion.jda.api.events.guild.GuildUnavailableEvent;
+import net.dv8tion.jda.api.events.http.HttpRequestEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.requests.Route;
 
 @DefaultAnnotation(NonNull.class)
 public class VoteUpdateHandler extends ListenerAdapter implements AutoCloseable {
 	private static class TodoElement {
 		public final long serverId;
 		public final long messageId;
+		public final long sequence;
 		public volatile Instant timeout; // NOSONAR Private class anyway
-		public volatile Instant nextTry; // NOSONAR Private class anyway
+		public Instant nextTry; // NOSONAR Private class anyway. Only changed while not in todoQueue.
+		public final Instant firstAdded; // NOSONAR Private class anyway
+		public Instant debounceUntil; // NOSONAR Private class anyway. Only used with the lock of todoElements.
 		public AtomicInteger tries; // NOSONAR Private class anyway
 
-		private TodoElement(final long serverId, final long messageId, final Instant timeout) {
+		private TodoElement(final long serverId, final long messageId, final long sequence, final Instant timeout,
+				final Instant firstAdded, final Instant debounceUntil) {
 			this.serverId = serverId;
 			this.messageId = messageId;
+			this.sequence = sequence;
 			this.timeout = timeout;
-			nextTry = Instant.now();
+			this.firstAdded = firstAdded;
+			this.debounceUntil = debounceUntil;
+			nextTry = debounceUntil;
 			tries = new AtomicInteger(0);
 		}
 	}
 
+	/**
+	 * Limits the updates of one channel. Only one update per channel runs at a time, so updates of the same message
+	 * can't overtake each other.
+	 */
+	private static class ChannelLimit {
+		private final TokenBucket bucket;
+		private boolean updateRunning = false;
+
+		private ChannelLimit(final TokenBucket bucket) {
+			this.bucket = bucket;
+		}
+
+		/**
+		 * @return 0 when the update may start, otherwise the nanoseconds to wait.
+		 */
+		private synchronized long tryStart(final long busyWaitNanos) {
+			if (updateRunning) {
+				return busyWaitNanos;
+			}
+			final long waitNanos = bucket.tryAcquire();
+			if (waitNanos == 0) {
+				updateRunning = true;
+			}
+			return waitNanos;
+		}
+
+		private synchronized void finish() {
+			updateRunning = false;
+		}
+
+		/**
+		 * Finishes an update, that didn't need to be sent.
+		 */
+		private synchronized void skip() {
+			updateRunning = false;
+			bucket.refund();
+		}
+	}
+
+	/**
+	 * Earliest nextTry first. Elements with the same nextTry in the order they were added.
+	 */
+	private static final Comparator<TodoElement> todoOrder = Comparator.comparing((TodoElement e) -> e.nextTry)
+			.thenComparingLong(e -> e.sequence);
+
 	private final Duration tryIntervall;
 	private final int maxTries;
 	private final Bot bot;
 	private final Db db;
 	private final ScheduledExecutorService executorService;
-	private final Map<Long, TodoElement> todoQueue;
+	private final int maxRunningUpdates;
+	private final Set<CompletableFuture<Void>> runningUpdates;
+	private final AdaptiveRate editRate;
+	private final long slowEditNanos;
+	private final LoadingCache<Long, ChannelLimit> channelLimits;
+	private final long intervallNanos;
+	// Fingerprint of the last text successfully sent by messageId
+	private final Cache<Long, Long> sentFingerprints;
+	private final AtomicLong skippedUpdates;
+	private final ScheduledExecutorService warmUpExecutorService;
+	private final Queue<Long> guildsToWarmUp;
+	private final long warmUpPauseMilliseconds;
+	// All waiting elements by messageId. Also used as lock for the following fields.
+	private final Map<Long, TodoElement> todoElements;
+	private final PriorityQueue<TodoElement> todoQueue;
+	private final Map<Long, List<TodoElement>> unavailableGuildTodos;
+	private long nextSequence = 0;
 	private final Set<Long> availableGuilds;
+	private final Map<Long, List<Long>> parkedTodos;
 	private final Duration updateTimeout;
+	private final Duration debounceQuietPeriod;
+	private final Duration debounceMaxDelay;
+	private final Clock clock;
 	private final Duration deleteVotesOffsetDays;
+	private final int deleteVotesBatchSize;
+	private final long deleteVotesBatchPauseMilliseconds;
+	private final int deleteVotesMaxBatches;
 
 	public VoteUpdateHandler(Bot bot) {
+		this(bot, Duration.ofMillis(Config.instance().updateDebounceMilliseconds),
+				Duration.ofMillis(Config.instance().updateDebounceMaxDelayMilliseconds), Clock.systemUTC());
+	}
+
+	/*package for test*/ VoteUpdateHandler(final Bot bot, final Duration debounceQuietPeriod,
+			final Duration debounceMaxDelay, final Clock clock) {
 		this.bot = bot;
+		this.debounceQuietPeriod = debounceQuietPeriod;
+		this.debounceMaxDelay = debounceMaxDelay;
+		this.clock = clock;
 		updateTimeout = Duration.ofMinutes(Config.instance().updateVotesTimeoutMinutes);
 		this.db = Db.instance();
-		this.todoQueue = new LinkedHashMap<>();
+		this.todoElements = new HashMap<>();
+		this.todoQueue = new PriorityQueue<>(todoOrder);
+		this.unavailableGuildTodos = new HashMap<>();
 		this.availableGuilds = ConcurrentHashMap.newKeySet();
+		this.parkedTodos = new ConcurrentHashMap<>();
 		this.executorService = new ScheduledThreadPoolExecutor(1);
+		this.maxRunningUpdates = Config.instance().updateMaxRunning;
+		this.runningUpdates = ConcurrentHashMap.newKeySet();
+		this.editRate = new AdaptiveRate(Config.instance().updateMinEditsPerSecond,
+				Config.instance().updateMaxEditsPerSecond, TimeUnit.SECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(1));
+		this.slowEditNanos = TimeUnit.MILLISECONDS.toNanos(Config.instance().updateSlowEditMilliseconds);
+		final int channelBurst = Config.instance().updateChannelBurst;
+		final long channelRefillNanos = TimeUnit.MILLISECONDS
+				.toNanos(Config.instance().updateChannelRefillMilliseconds);
+		this.channelLimits = Caffeine.newBuilder().expireAfterAccess(Duration.ofMinutes(10))
+				.scheduler(Scheduler.systemScheduler())
+				.build(channelId -> new ChannelLimit(new TokenBucket(channelBurst, channelRefillNanos)));
+		this.intervallNanos = TimeUnit.MILLISECONDS.toNanos(Config.instance().updateIntervalMilliseconds);
+		this.sentFingerprints = Caffeine.newBuilder().expireAfterAccess(Duration.ofDays(1))
+				.scheduler(Scheduler.systemScheduler()).maximumSize(Config.instance().updateFingerprintCacheSize)
+				.recordStats().build();
+		this.skippedUpdates = new AtomicLong(0);
+		CacheMetrics.register("sent_fingerprints", sentFingerprints);
+		CacheMetrics.registerCounter("skipped_message_updates_total",
+				"Message updates not sent, because the text didn't change", skippedUpdates::get);
+		// Own thread, so warming up large guilds doesn't delay message updates
+		this.warmUpExecutorService = new ScheduledThreadPoolExecutor(1);
+		this.guildsToWarmUp = new ConcurrentLinkedQueue<>();
+		this.warmUpPauseMilliseconds = Config.instance().warmUpPauseMilliseconds;
 		this.tryIntervall = Duration.ofSeconds(Config.instance().updateRetryPause);
 		this.maxTries = Config.instance().updateMaxTries;
 		this.deleteVotesOffsetDays = Duration.ofDays(Config.instance().deleteVotesOffsetDays);
+		this.deleteVotesBatchSize = Config.instance().deleteVotesBatchSize;
+		this.deleteVotesBatchPauseMilliseconds = Config.instance().deleteVotesBatchPauseMilliseconds;
+		this.deleteVotesMaxBatches = Config.instance().deleteVotesMaxBatches;
 	}
 
 	@Override
 	public void onGuildReady(GuildReadyEvent event) {
 		final long guildId = event.getGuild().getIdLong();
-		availableGuilds.add(guildId);
-		loadTodo(guildId);
+		guildAvailable(guildId);
+		guildsToWarmUp.add(guildId);
 	}
 
 	@Override
 	public void onGuildJoin(GuildJoinEvent event) {
-		final long guildId = event.getGuild().getIdLong();
-		availableGuilds.add(guildId);
-		loadTodo(guildId);
+		guildAvailable(event.getGuild().getIdLong());
 	}
 
 	@Override
 	public void onGuildAvailable(GuildAvailableEvent event) {
 		final long guildId = event.getGuild().getIdLong();
-		availableGuilds.add(guildId);
 		Log.getLog(this).warning("Guild " + event.getGuild().getName() + "(" + guildId + ") is now available again");
+		guildAvailable(guildId);
+	}
+
+	private void guildAvailable(final long guildId) {
+		synchronized (todoElements) {
+			// Under the lock, so no element of this guild can be parked after the parked ones were released
+			availableGuilds.add(guildId);
+			final @CheckForNull List<TodoElement> parked = unavailableGuildTodos.remove(guildId);
+			if (parked != null) {
+				todoQueue.addAll(parked);
+			}
+		}
 		loadTodo(guildId);
 	}
 
@@ -112,104 +257,299 @@ public class VoteUpdateHandler extends ListenerAdapter implements AutoCloseable
 
 	@Override
 	public void onGuildLeave(GuildLeaveEvent event) {
-		availableGuilds.remove(event.getGuild().getIdLong());
+		final long guildId = event.getGuild().getIdLong();
+		synchronized (todoElements) {
+			availableGuilds.remove(guildId);
+			unavailableGuildTodos.remove(guildId);
+			todoElements.values().removeIf(element -> element.serverId == guildId);
+			todoQueue.removeIf(element -> element.serverId == guildId);
+			parkedTodos.remove(guildId);
+		}
+	}
+
+	/**
+	 * JDA waits and retries rate limited requests itself, so a rate limited edit is only seen here.
+	 */
+	@Override
+	public void onHttpRequest(HttpRequestEvent event) {
+		if (event.isRateLimit() && event.getRoute().getBaseRoute() == Route.Messages.EDIT_MESSAGE) {
+			backoff("rate limited by discord");
+		}
+	}
+
+	private void backoff(final String reason) {
+		if (editRate.backoff()) {
+			Log.getLog(this).warning(String.format(Locale.ROOT, "Slowing message updates down to %.1f/s, %s",
+					editRate.perSecond(), reason));
+		}
 	}
 
 	private void saveTodo() {
-		final List<Pair<Long, Long>> messageIds;
-		synchronized (todoQueue) {
-			messageIds = todoQueue.values().stream().map(e -> Pair.of(e.serverId, e.messageId))
-					.collect(Collectors.toUnmodifiableList());
+		final List<Db.ToUpdateVote> toUpdateVotes = new ArrayList<>();
+		synchronized (todoElements) {
+			todoElements.values().forEach(e -> toUpdateVotes.add(toUpdateVote(e.serverId, e.messageId)));
+			// Guilds that never became available keep their backlog for the next start
+			parkedTodos.forEach((guildId, guildMessageIds) -> guildMessageIds.stream()
+					.filter(messageId -> !todoElements.containsKey(messageId))
+					.forEach(messageId -> toUpdateVotes.add(toUpdateVote(guildId, messageId))));
+		}
+		db.saveToUpdateVotes(toUpdateVotes);
+	}
+
+	private Db.ToUpdateVote toUpdateVote(final long serverId, final long messageId) {
+		return new Db.ToUpdateVote(serverId, messageId, sentFingerprints.getIfPresent(messageId));
+	}
+
+	/**
+	 * Loads the backlog saved on the last shutdown in one transaction. It is parked per guild until the guild is
+	 * ready. Must be called before the guilds get ready.
+	 */
+	public void loadSavedTodos() {
+		for (final Db.ToUpdateVote toUpdateVote : db.loadAllToUpdateVotes()) {
+			parkedTodos.computeIfAbsent(toUpdateVote.serverId, guildId -> new ArrayList<>())
+					.add(toUpdateVote.messageId);
+			// So the retry after a restart is skipped, when the last update was already sent
+			if (toUpdateVote.sentFingerprint != null) {
+				sentFingerprints.put(toUpdateVote.messageId, toUpdateVote.sentFingerprint);
+			}
 		}
-		db.saveToUpdateVotes(messageIds);
 	}
 
 	private void loadTodo(final long guildId) {
-		final Collection<Pair<Long, Long>> todos = db.loadAndDeleteToUpdateVotes(guildId);
-		todos.forEach(
-				serverAndMessageId -> addToUpdateVote(serverAndMessageId.getLeft(), serverAndMessageId.getRight()));
+		final @CheckForNull List<Long> todos = parkedTodos.remove(guildId);
+		if (todos != null) {
+			todos.forEach(messageId -> addToUpdateVote(guildId, messageId));
+		}
 	}
 
+	/**
+	 * The update waits until the vote had no changes for debounceQuietPeriod, but at most debounceMaxDelay after the
+	 * first change that wasn't sent yet. So a burst of answers results in one update.
+	 */
 	public void addToUpdateVote(final long serverId, final long messageId) {
-		final Instant timeout = Instant.now().plus(updateTimeout);
-		synchronized (todoQueue) {
-			todoQueue.compute(messageId, (key, value) -> {
-				if (value == null) {
-					return new TodoElement(serverId, messageId, timeout);
-				} else {
-					value.timeout = timeout;
-					return value;
-				}
-			});
+		final Instant now = Instant.now(clock);
+		final Instant timeout = now.plus(updateTimeout);
+		synchronized (todoElements) {
+			final @CheckForNull TodoElement existing = todoElements.get(messageId);
+			if (existing != null) {
+				existing.timeout = timeout;
+				existing.debounceUntil = min(now.plus(debounceQuietPeriod),
+						existing.firstAdded.plus(debounceMaxDelay));
+			} else {
+				final TodoElement element = new TodoElement(serverId, messageId, nextSequence++, timeout, now,
+						now.plus(debounceQuietPeriod));
+				todoElements.put(messageId, element);
+				todoQueue.add(element);
+			}
 		}
 	}
 
+	private static Instant min(final Instant first, final Instant second) {
+		return first.isBefore(second) ? first : second;
+	}
+
 	public void start() {
 		final long intervall = Config.instance().updateIntervalMilliseconds;
-		executorService.scheduleWithFixedDelay(this::updateVote, intervall, intervall, TimeUnit.MILLISECONDS);
+		executorService.scheduleWithFixedDelay(this::dispatchUpdates, intervall, intervall, TimeUnit.MILLISECONDS);
 		executorService.scheduleWithFixedDelay(this::searchForVotesToEditLast, 10, 10, TimeUnit.SECONDS);
 		executorService.scheduleWithFixedDelay(this::deleteOldVotes, 3, 3, TimeUnit.HOURS);
+		warmUpExecutorService.scheduleWithFixedDelay(this::warmUpNextGuild, warmUpPauseMilliseconds,
+				warmUpPauseMilliseconds, TimeUnit.MILLISECONDS);
 	}
 
+	/**
+	 * Loads the running votes of one ready guild into the cache. Only one guild at a time with a pause in between,
+	 * so the warm-up uses at most one connection from the pool.
+	 */
+	/*package for test*/ void warmUpNextGuild() {
+		final @CheckForNull Long guildId = guildsToWarmUp.poll();
+		if (guildId == null || !availableGuilds.contains(guildId)) {
+			return;
+		}
+		try (Transaction trans = db.getReadOnlyTransaction(guildId)) {
+			db.warmUpVotes(trans, Instant.now(clock).getEpochSecond());
+		} catch (Throwable t) { // NOSONAR This task should not be cancelled
+			Log.getLog(this).log(Level.WARNING, "Cant warm up votes of guild " + guildId, t);
+		}
+	}
+
+	/**
+	 * Takes the due element with the earliest nextTry. Elements of unavailable guilds are parked until the guild is
+	 * available again, so each element is only moved once instead of on every call. Elements with newer changes are
+	 * put back until their debounce time, instead of moving them in the queue on every change.
+	 */
 	private @CheckForNull TodoElement getNextElement() {
-		synchronized (todoQueue) {
-			final Instant now = Instant.now();
-			final Map<Long, TodoElement> bufferedElements = new LinkedHashMap<>();
+		synchronized (todoElements) {
+			final Instant now = Instant.now(clock);
 			@CheckForNull
-			TodoElement element = null;
-			while (element == null && !todoQueue.isEmpty()) {
-				final Iterator<TodoElement> it = todoQueue.values().iterator();
-				element = it.next();
-				it.remove();
+			TodoElement element;
+			while ((element = todoQueue.peek()) != null && !element.nextTry.isAfter(now)) {
+				todoQueue.poll();
 				if (element.timeout.isBefore(now)) {
-					element = null; // Element is timed out.
-				} else if (!availableGuilds.contains(element.serverId) || element.nextTry.isAfter(now)) {
-					bufferedElements.put(element.serverId, element);
-					element = null;
+					todoElements.remove(element.messageId); // Element is timed out.
+				} else if (!availableGuilds.contains(element.serverId) && !bot.isGuildKnown(element.serverId)) {
+					todoElements.remove(element.messageId); // The bot left the guild.
+				} else if (!availableGuilds.contains(element.serverId)) {
+					unavailableGuildTodos.computeIfAbsent(element.serverId, guildId -> new ArrayList<>()).add(element);
+				} else if (element.debounceUntil.isAfter(now)) {
+					element.nextTry = element.debounceUntil;
+					todoQueue.add(element);
+				} else {
+					todoElements.remove(element.messageId);
+					return element;
+				}
+			}
+			return null;
+		}
+	}
+
+	private void requeue(final TodoElement element, final Instant nextTry) {
+		synchronized (todoElements) {
+			// A newer element for this message was added meanwhile, that one is enough
+			if (todoElements.putIfAbsent(element.messageId, element) == null) {
+				element.nextTry = nextTry;
+				todoQueue.add(element);
+			}
+		}
+	}
+
+	/**
+	 * Starts due updates, as long as less than maxRunningUpdates are waiting for discord and the edit rate allows it.
+	 */
+	/*package for test*/ void dispatchUpdates() {
+		try {
+			while (runningUpdates.size() < maxRunningUpdates) {
+				final @CheckForNull TodoElement element = getNextElement();
+				if (element == null) {
+					return;
 				}
+				if (editRate.tryAcquire() > 0) {
+					requeue(element, element.nextTry);
+					return;
+				}
+				startUpdate(element);
 			}
-			todoQueue.putAll(bufferedElements);
-			return element;
+		} catch (Throwable t) { // NOSONAR This task should not be cancelled
+			Log.getLog(this).log(Level.SEVERE, "Cant dispatch vote updates", t);
 		}
 	}
 
 	/*package for test*/ void updateVote() {
 		final @CheckForNull TodoElement element = getNextElement();
-		if (element == null) {
-			return;
+		if (element != null) {
+			startUpdate(element).join();
 		}
+	}
 
-		try (Transaction trans = db.getTransaction(element.serverId)) {
-			final Vote vote = db.getVote(trans, element.messageId);
-			bot.updateMessage(element.serverId, vote.channelId, element.messageId, CommandUtil.createVoteText(vote));
+	/**
+	 * Sends the edit without waiting for discord, unless the text is the same as the last one sent. The returned
+	 * future completes, when the update is done, skipped or failed.
+	 */
+	private CompletableFuture<Void> startUpdate(final TodoElement element) {
+		final CompletableFuture<Void> update = new CompletableFuture<>();
+		runningUpdates.add(update);
+		update.whenComplete((result, failure) -> runningUpdates.remove(update));
+		try {
+			final Vote vote;
+			try (Transaction trans = db.getReadOnlyTransaction(element.serverId)) {
+				vote = db.getVote(trans, element.messageId);
+			}
+			final String text = CommandUtil.createVoteText(vote);
+			final long fingerprint = fingerprint(text);
+			final ChannelLimit channelLimit = channelLimits.get(vote.channelId);
+			final long waitNanos = channelLimit.tryStart(intervallNanos);
+			if (waitNanos > 0) {
+				editRate.refund();
+				requeue(element, Instant.now(clock).plusNanos(waitNanos));
+				update.complete(null);
+				return update;
+			}
+			// Only compared while holding the channel, so no other edit of this message is in flight
+			final @CheckForNull Long sentFingerprint = sentFingerprints.getIfPresent(element.messageId);
+			if (sentFingerprint != null && sentFingerprint == fingerprint) {
+				channelLimit.skip();
+				skippedUpdates.incrementAndGet();
+				editRate.refund();
+				update.complete(null);
+				return update;
+			}
+			final long startNanos = System.nanoTime();
+			final CompletableFuture<Void> edit;
+			try {
+				edit = bot.updateMessage(element.serverId, vote.channelId, element.messageId, text);
+			} catch (Throwable t) { // NOSONAR Rethrown
+				// JDA checks permissions and the length before sending, so the channel must not stay blocked
+				channelLimit.finish();
+				throw t;
+			}
+			edit.whenComplete((result, failure) -> {
+				channelLimit.finish();
+				if (failure != null) {
+					// The message may or may not show the new text now
+					sentFingerprints.invalidate(element.messageId);
+					updateFailed(element, failure);
+				} else {
+					sentFingerprints.put(element.messageId, fingerprint);
+					if (System.nanoTime() - startNanos > slowEditNanos) {
+						backoff("update of vote " + element.messageId + " was slow");
+					} else {
+						editRate.success();
+					}
+				}
+				update.complete(null);
+			});
 		} catch (NotFoundException e) {
 			// Nothing to do. We just throw away the element.
+			update.complete(null);
 		} catch (Throwable t) { // NOSONAR
-			element.tries.incrementAndGet();
-			Log.getLog(this).log(Level.SEVERE, "Cant update vote " + element.messageId + " in try " + element.tries, t);
-			if (element.tries.get() < maxTries) {
-				element.nextTry = element.nextTry.plus(tryIntervall);
-				synchronized (todoQueue) {
-					todoQueue.put(element.serverId, element);
-				}
-			}
+			updateFailed(element, t);
+			update.complete(null);
+		}
+		return update;
+	}
+
+	/**
+	 * First 64 bits of the SHA-256 of the text. String.hashCode() is too short, a collision would skip a needed update.
+	 */
+	private static long fingerprint(final String text) {
+		try {
+			return ByteBuffer
+					.wrap(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)))
+					.getLong();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	private void updateFailed(final TodoElement element, final Throwable failure) {
+		element.tries.incrementAndGet();
+		Log.getLog(this).log(Level.SEVERE, "Cant update vote " + element.messageId + " in try " + element.tries,
+				failure);
+		if (element.tries.get() < maxTries) {
+			requeue(element, Instant.now(clock).plus(tryIntervall));
 		}
 	}
 
 	@Override
 	public void close() {
+		warmUpExecutorService.shutdown();
 		executorService.shutdown();
 		try {
 			executorService.awaitTermination(1, TimeUnit.MINUTES);
 		} catch (InterruptedException e) { // NOSONAR We are shutting down, just continue shutdown
 		}
+		try {
+			// Failed updates are queued again, so wait for them before saving the queue
+			CompletableFuture.allOf(runningUpdates.toArray(new CompletableFuture<?>[0])).get(1, TimeUnit.MINUTES);
+		} catch (InterruptedException | ExecutionException | TimeoutException e) { // NOSONAR We are shutting down
+		}
 		saveTodo();
 	}
 
 	/*package for test*/ void searchForVotesToEditLast() {
 		try {
 			final Collection<Pair<Long, Long>> toUpdateVoteIds = db
-					.getVotesToLastUpdate(Instant.now().getEpochSecond());
+					.getVotesToLastUpdate(Instant.now(clock).getEpochSecond());
 			for (final Pair<Long, Long> toUpdateVoteId : toUpdateVoteIds) {
 				addToUpdateVote(toUpdateVoteId.getLeft(), toUpdateVoteId.getRight());
 			}
@@ -220,21 +560,45 @@ public class VoteUpdateHandler extends ListenerAdapter implements AutoCloseable
 	}
 
 	/*package for test*/ void deleteOldVotes() {
+		final long deleteBefore = Instant.now(clock).minus(deleteVotesOffsetDays).getEpochSecond();
+		deleteOldVotes(deleteBefore, 1, Db.DeletedRows.NONE);
+	}
+
+	private void deleteOldVotes(final long deleteBefore, final int batch, final Db.DeletedRows deletedBefore) {
 		try {
-			final long deleteBefore = Instant.now().minus(deleteVotesOffsetDays).getEpochSecond();
-			final int deleted = db.deleteOldVotes(deleteBefore);
-			Log.getLog(this).info("Deleted " + deleted + " old votes");
+			final Db.DeletedRows deleted = db.deleteOldVotes(deleteBefore, deleteVotesBatchSize);
+			final Db.DeletedRows deletedSum = deletedBefore.plus(deleted);
+			// Delete in small transactions with pauses in between, so we dont hold locks needed by voters for long
+			if (deleted.votes >= deleteVotesBatchSize && batch < deleteVotesMaxBatches
+					&& !executorService.isShutdown()) {
+				executorService.schedule(() -> deleteOldVotes(deleteBefore, batch + 1, deletedSum),
+						deleteVotesBatchPauseMilliseconds, TimeUnit.MILLISECONDS);
+			} else {
+				Log.getLog(this).info("Deleted old votes in " + batch + " batches: " + deletedSum);
+			}
 		} catch (Throwable t) { // NOSONAR This task should not be cancelled
 			Log.getLog(this).log(Level.SEVERE, "Cant delete old votes", t);
 		}
 	}
 
 	public long todoQueueLength() {
-		synchronized (todoQueue) {
-			return todoQueue.size();
+		synchronized (todoElements) {
+			return todoElements.size();
 		}
 	}
 
+	/*package for test*/ int runningUpdates() {
+		return runningUpdates.size();
+	}
+
+	public long skippedUpdates() {
+		return skippedUpdates.get();
+	}
+
+	public AdaptiveRate editRate() {
+		return editRate;
+	}
+
 	public long numShardGuilds() {
 		return availableGuilds.size();
 	}
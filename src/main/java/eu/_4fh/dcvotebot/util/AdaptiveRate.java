@@ -0,0 +1,112 @@
+package eu._4fh.dcvotebot.util;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.Validate;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Token bucket with a rate between a floor and a ceiling. Each success raises the rate a little, so it grows by about
+ * one call per second every second. A backoff halves the rate.
+ */
+@DefaultAnnotation(NonNull.class)
+public class AdaptiveRate {
+	private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private final double minPerSecond;
+	private final double maxPerSecond;
+	private final long burstNanos;
+	private final long backoffPauseNanos;
+	private double perSecond;
+	private double tokens;
+	private long lastRefill;
+	private long lastBackoffNanos;
+	private @CheckForNull Instant lastBackoff = null;
+	private long backoffs = 0;
+
+	/**
+	 * @param burstNanos Tokens for this time at the current rate can be saved up, but at least one.
+	 * @param backoffPauseNanos Further backoffs in this time after a backoff are ignored, because the calls started
+	 *            before were sent with the old rate.
+	 */
+	public AdaptiveRate(final int minPerSecond, final int maxPerSecond, final long burstNanos,
+			final long backoffPauseNanos) {
+		Validate.inclusiveBetween(1, Integer.MAX_VALUE, minPerSecond);
+		Validate.inclusiveBetween(minPerSecond, Integer.MAX_VALUE, maxPerSecond);
+		Validate.inclusiveBetween(0, Long.MAX_VALUE, burstNanos);
+		Validate.inclusiveBetween(0, Long.MAX_VALUE, backoffPauseNanos);
+		this.minPerSecond = minPerSecond;
+		this.maxPerSecond = maxPerSecond;
+		this.burstNanos = burstNanos;
+		this.backoffPauseNanos = backoffPauseNanos;
+		// Start at the floor, so a backlog after a restart doesn't run into the rate limit at once
+		this.perSecond = minPerSecond;
+		this.tokens = maxTokens();
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Takes a token, if there is one.
+	 *
+	 * @return 0 when a token was taken, otherwise the nanoseconds until the next token is available.
+	 */
+	public synchronized long tryAcquire() {
+		final long now = System.nanoTime();
+		tokens = Math.min(maxTokens(), tokens + (now - lastRefill) * perSecond / NANOS_PER_SECOND);
+		lastRefill = now;
+		if (tokens >= 1d) {
+			tokens -= 1d;
+			return 0;
+		}
+		return Math.max(1, (long) Math.ceil((1d - tokens) * NANOS_PER_SECOND / perSecond));
+	}
+
+	/**
+	 * Gives back a token, that was taken but not used.
+	 */
+	public synchronized void refund() {
+		tokens = Math.min(maxTokens(), tokens + 1d);
+	}
+
+	private double maxTokens() {
+		return Math.max(1d, perSecond * burstNanos / NANOS_PER_SECOND);
+	}
+
+	public synchronized void success() {
+		perSecond = Math.min(maxPerSecond, perSecond + 1d / perSecond);
+	}
+
+	/**
+	 * Halves the rate and drops saved up tokens.
+	 *
+	 * @return false, if the backoff was ignored because of a recent backoff.
+	 */
+	public synchronized boolean backoff() {
+		final long now = System.nanoTime();
+		if (lastBackoff != null && now - lastBackoffNanos < backoffPauseNanos) {
+			return false;
+		}
+		perSecond = Math.max(minPerSecond, perSecond / 2d);
+		tokens = 0d;
+		lastBackoffNanos = now;
+		lastBackoff = Instant.now();
+		backoffs++;
+		return true;
+	}
+
+	public synchronized double perSecond() {
+		return perSecond;
+	}
+
+	public synchronized long backoffs() {
+		return backoffs;
+	}
+
+	public synchronized @CheckForNull Instant lastBackoff() {
+		return lastBackoff;
+	}
+}
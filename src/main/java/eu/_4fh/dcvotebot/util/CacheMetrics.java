@@ -0,0 +1,109 @@
+package eu._4fh.dcvotebot.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.ToDoubleFunction;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Knows all caches with recorded stats and a few other counters, so their numbers can be shown by the stats command and
+ * the metrics endpoint.
+ */
+@DefaultAnnotation(NonNull.class)
+public class CacheMetrics {
+	private static class Counter {
+		private final String type;
+		private final String help;
+		private final LongSupplier value;
+
+		private Counter(final String type, final String help, final LongSupplier value) {
+			this.type = type;
+			this.help = help;
+			this.value = value;
+		}
+	}
+
+	private static final Map<String, Cache<?, ?>> caches = new ConcurrentSkipListMap<>();
+	private static final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+
+	private CacheMetrics() {
+	}
+
+	/**
+	 * Replaces a cache with the same name, for example when the Db is recreated in tests.
+	 */
+	public static void register(final String name, final Cache<?, ?> cache) {
+		caches.put(name, cache);
+	}
+
+	/**
+	 * Replaces a counter with the same name. The name is used without a prefix other than dcvotebot_.
+	 */
+	public static void registerCounter(final String name, final String help, final LongSupplier value) {
+		counters.put(name, new Counter("counter", help, value));
+	}
+
+	/**
+	 * Like registerCounter, but for a value that can also go down.
+	 */
+	public static void registerGauge(final String name, final String help, final LongSupplier value) {
+		counters.put(name, new Counter("gauge", help, value));
+	}
+
+	public static Map<String, Cache<?, ?>> caches() {
+		return Collections.unmodifiableMap(caches);
+	}
+
+	/**
+	 * All cache numbers in the Prometheus text format.
+	 */
+	public static String prometheusText() {
+		final StringBuilder result = new StringBuilder();
+		appendMetric(result, "hits_total", "counter", "Cache hits", stats -> stats.hitCount());
+		appendMetric(result, "misses_total", "counter", "Cache misses", stats -> stats.missCount());
+		appendMetric(result, "loads_total", "counter", "Loads after a miss", stats -> stats.loadCount());
+		appendMetric(result, "load_failures_total", "counter", "Loads that failed",
+				stats -> stats.loadFailureCount());
+		appendMetric(result, "load_seconds_total", "counter", "Time spent loading",
+				stats -> stats.totalLoadTime() / (double) TimeUnit.SECONDS.toNanos(1));
+		appendMetric(result, "evictions_total", "counter", "Evictions because of size or expiry",
+				stats -> stats.evictionCount());
+		result.append("# HELP dcvotebot_cache_size Estimated number of entries\n");
+		result.append("# TYPE dcvotebot_cache_size gauge\n");
+		for (final Map.Entry<String, Cache<?, ?>> cache : caches.entrySet()) {
+			appendLine(result, "size", cache.getKey(), cache.getValue().estimatedSize());
+		}
+		for (final Map.Entry<String, Counter> counter : counters.entrySet()) {
+			result.append("# HELP dcvotebot_").append(counter.getKey()).append(' ').append(counter.getValue().help)
+					.append('\n');
+			result.append("# TYPE dcvotebot_").append(counter.getKey()).append(' ').append(counter.getValue().type)
+					.append('\n');
+			result.append("dcvotebot_").append(counter.getKey()).append(' ')
+					.append(counter.getValue().value.getAsLong()).append('\n');
+		}
+		return result.toString();
+	}
+
+	private static void appendMetric(final StringBuilder result, final String name, final String type,
+			final String help, final ToDoubleFunction<CacheStats> value) {
+		result.append("# HELP dcvotebot_cache_").append(name).append(' ').append(help).append('\n');
+		result.append("# TYPE dcvotebot_cache_").append(name).append(' ').append(type).append('\n');
+		for (final Map.Entry<String, Cache<?, ?>> cache : caches.entrySet()) {
+			appendLine(result, name, cache.getKey(), value.applyAsDouble(cache.getValue().stats()));
+		}
+	}
+
+	private static void appendLine(final StringBuilder result, final String name, final String cacheName,
+			final double value) {
+		result.append("dcvotebot_cache_").append(name).append("{cache=\"").append(cacheName).append("\"} ")
+				.append(value).append('\n');
+	}
+}
@@ -33,7 +33,26 @@ public class Config { // NOSONAR Yes, Singleton is correct
 	public final long updateVotesTimeoutMinutes;
 	public final int updateRetryPause;
 	public final int updateMaxTries;
+	public final int updateMaxRunning;
+	public final int updateChannelBurst;
+	public final long updateChannelRefillMilliseconds;
+	public final int updateMinEditsPerSecond;
+	public final int updateMaxEditsPerSecond;
+	public final long updateSlowEditMilliseconds;
+	public final long updateFingerprintCacheSize;
+	public final long updateDebounceMilliseconds;
+	public final long updateDebounceMaxDelayMilliseconds;
 	public final int deleteVotesOffsetDays;
+	public final int deleteVotesBatchSize;
+	public final long deleteVotesBatchPauseMilliseconds;
+	public final int deleteVotesMaxBatches;
+	public final double leakDetectionSamplePercent;
+	public final int dbAsyncThreads;
+	public final int dbAsyncQueueSize;
+	public final long voteCacheMaxWeight;
+	public final long unknownVotesCacheSize;
+	public final long warmUpPauseMilliseconds;
+	public final int metricsPort;
 	public final HikariDataSource dataSource;
 
 	private Config() {
@@ -53,9 +72,64 @@ public class Config { // NOSONAR Yes, Singleton is correct
 				"updateVoteMessages.timeout must be >= 1 and <= 2880");
 		updateRetryPause = Integer.parseUnsignedInt(nonNull(props, "updateVoteMessages.RetryPauseSeconds"));
 		updateMaxTries = Integer.parseUnsignedInt(nonNull(props, "updateVoteMessages.RetryMaxTimes"));
+		updateMaxRunning = Integer.parseUnsignedInt(nonNull(props, "updateVoteMessages.MaxRunning"));
+		Validate.inclusiveBetween(1, 100, updateMaxRunning, "updateVoteMessages.MaxRunning must be >= 1 and <= 100");
+		updateChannelBurst = Integer.parseUnsignedInt(nonNull(props, "updateVoteMessages.ChannelBurst"));
+		Validate.inclusiveBetween(1, 100, updateChannelBurst,
+				"updateVoteMessages.ChannelBurst must be >= 1 and <= 100");
+		updateChannelRefillMilliseconds = Long
+				.parseUnsignedLong(nonNull(props, "updateVoteMessages.ChannelRefillMilliseconds"));
+		Validate.inclusiveBetween(1, 600000, updateChannelRefillMilliseconds,
+				"updateVoteMessages.ChannelRefillMilliseconds must be >= 1 and <= 600000");
+		updateMinEditsPerSecond = Integer.parseUnsignedInt(nonNull(props, "updateVoteMessages.MinEditsPerSecond"));
+		Validate.inclusiveBetween(1, 1000, updateMinEditsPerSecond,
+				"updateVoteMessages.MinEditsPerSecond must be >= 1 and <= 1000");
+		updateMaxEditsPerSecond = Integer.parseUnsignedInt(nonNull(props, "updateVoteMessages.MaxEditsPerSecond"));
+		Validate.inclusiveBetween(updateMinEditsPerSecond, 1000, updateMaxEditsPerSecond,
+				"updateVoteMessages.MaxEditsPerSecond must be >= updateVoteMessages.MinEditsPerSecond and <= 1000");
+		updateSlowEditMilliseconds = Long.parseUnsignedLong(nonNull(props, "updateVoteMessages.SlowEditMilliseconds"));
+		Validate.inclusiveBetween(1, 600000, updateSlowEditMilliseconds,
+				"updateVoteMessages.SlowEditMilliseconds must be >= 1 and <= 600000");
+		updateFingerprintCacheSize = Long.parseUnsignedLong(nonNull(props, "updateVoteMessages.FingerprintCacheSize"));
+		Validate.inclusiveBetween(1, Long.MAX_VALUE, updateFingerprintCacheSize,
+				"updateVoteMessages.FingerprintCacheSize must be >= 1");
+		updateDebounceMilliseconds = Long.parseUnsignedLong(nonNull(props, "updateVoteMessages.DebounceMilliseconds"));
+		Validate.inclusiveBetween(0, 600000, updateDebounceMilliseconds,
+				"updateVoteMessages.DebounceMilliseconds must be >= 0 and <= 600000");
+		updateDebounceMaxDelayMilliseconds = Long
+				.parseUnsignedLong(nonNull(props, "updateVoteMessages.DebounceMaxDelayMilliseconds"));
+		Validate.inclusiveBetween(updateDebounceMilliseconds, 600000, updateDebounceMaxDelayMilliseconds,
+				"updateVoteMessages.DebounceMaxDelayMilliseconds must be >= updateVoteMessages.DebounceMilliseconds"
+						+ " and <= 600000");
 		deleteVotesOffsetDays = Integer.parseUnsignedInt(nonNull(props, "updateVoteMessages.DeleteVotesOffsetDays"));
 		Validate.inclusiveBetween(1, Integer.MAX_VALUE, deleteVotesOffsetDays,
 				"updateVoteMessages.DeleteVotesOffsetDays must be >= 1");
+		deleteVotesBatchSize = Integer.parseUnsignedInt(nonNull(props, "updateVoteMessages.DeleteVotesBatchSize"));
+		Validate.inclusiveBetween(1, 10000, deleteVotesBatchSize,
+				"updateVoteMessages.DeleteVotesBatchSize must be >= 1 and <= 10000");
+		deleteVotesBatchPauseMilliseconds = Long
+				.parseUnsignedLong(nonNull(props, "updateVoteMessages.DeleteVotesBatchPauseMilliseconds"));
+		Validate.inclusiveBetween(0, 60000, deleteVotesBatchPauseMilliseconds,
+				"updateVoteMessages.DeleteVotesBatchPauseMilliseconds must be >= 0 and <= 60000");
+		deleteVotesMaxBatches = Integer.parseUnsignedInt(nonNull(props, "updateVoteMessages.DeleteVotesMaxBatches"));
+		Validate.inclusiveBetween(1, Integer.MAX_VALUE, deleteVotesMaxBatches,
+				"updateVoteMessages.DeleteVotesMaxBatches must be >= 1");
+		leakDetectionSamplePercent = Double.parseDouble(nonNull(props, "db.leakDetectionSamplePercent"));
+		Validate.inclusiveBetween(0d, 100d, leakDetectionSamplePercent,
+				"db.leakDetectionSamplePercent must be >= 0 and <= 100");
+		dbAsyncThreads = Integer.parseUnsignedInt(nonNull(props, "db.asyncThreads"));
+		Validate.inclusiveBetween(1, 1000, dbAsyncThreads, "db.asyncThreads must be >= 1 and <= 1000");
+		dbAsyncQueueSize = Integer.parseUnsignedInt(nonNull(props, "db.asyncQueueSize"));
+		Validate.inclusiveBetween(1, Integer.MAX_VALUE, dbAsyncQueueSize, "db.asyncQueueSize must be >= 1");
+		voteCacheMaxWeight = Long.parseUnsignedLong(nonNull(props, "db.voteCacheMaxWeight"));
+		Validate.inclusiveBetween(1, Long.MAX_VALUE, voteCacheMaxWeight, "db.voteCacheMaxWeight must be >= 1");
+		unknownVotesCacheSize = Long.parseUnsignedLong(nonNull(props, "db.unknownVotesCacheSize"));
+		Validate.inclusiveBetween(1, Long.MAX_VALUE, unknownVotesCacheSize, "db.unknownVotesCacheSize must be >= 1");
+		warmUpPauseMilliseconds = Long.parseUnsignedLong(nonNull(props, "db.warmUpPauseMilliseconds"));
+		Validate.inclusiveBetween(1, 60000, warmUpPauseMilliseconds,
+				"db.warmUpPauseMilliseconds must be >= 1 and <= 60000");
+		metricsPort = Integer.parseUnsignedInt(nonNull(props, "metrics.port"));
+		Validate.inclusiveBetween(0, 65535, metricsPort, "metrics.port must be >= 0 and <= 65535");
 		final HikariConfig hikariConfig = new HikariConfig(
 				readFile(System.getProperty("DcVoteBotHikariConfig", "hikari.cfg")));
 		hikariConfig.setAutoCommit(false);
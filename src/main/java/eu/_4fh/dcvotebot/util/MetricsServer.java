@@ -0,0 +1,58 @@
+package eu._4fh.dcvotebot.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Serves the cache metrics for Prometheus on localhost:metrics.port/metrics.
+ */
+@DefaultAnnotation(NonNull.class)
+public class MetricsServer implements AutoCloseable {
+	private final @CheckForNull HttpServer server;
+
+	public MetricsServer(final int port) {
+		if (port == 0) {
+			server = null;
+			return;
+		}
+		try {
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		} catch (IOException e) {
+			Log.getLog(this).log(Level.SEVERE, "Cant start metrics server on port " + port, e);
+			throw new IllegalStateException("Cant start metrics server on port " + port, e);
+		}
+		server.createContext("/metrics", this::handle);
+		server.start();
+	}
+
+	private void handle(final HttpExchange exchange) throws IOException {
+		try {
+			final byte[] body = CacheMetrics.prometheusText().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	@Override
+	public void close() {
+		if (server != null) {
+			server.stop(0);
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package eu._4fh.dcvotebot.util;
+
+import org.apache.commons.lang3.Validate;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Allows capacity calls at once and then one call per refillNanos.
+ */
+@DefaultAnnotation(NonNull.class)
+public class TokenBucket {
+	private final int capacity;
+	private final long refillNanos;
+	private double tokens;
+	private long lastRefill;
+
+	public TokenBucket(final int capacity, final long refillNanos) {
+		Validate.inclusiveBetween(1, Integer.MAX_VALUE, capacity);
+		Validate.inclusiveBetween(1, Long.MAX_VALUE, refillNanos);
+		this.capacity = capacity;
+		this.refillNanos = refillNanos;
+		this.tokens = capacity;
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Takes a token, if there is one.
+	 *
+	 * @return 0 when a token was taken, otherwise the nanoseconds until the next token is available.
+	 */
+	public synchronized long tryAcquire() {
+		final long now = System.nanoTime();
+		tokens = Math.min(capacity, tokens + (now - lastRefill) / (double) refillNanos);
+		lastRefill = now;
+		if (tokens >= 1d) {
+			tokens -= 1d;
+			return 0;
+		}
+		return Math.max(1, (long) Math.ceil((1d - tokens) * refillNanos));
+	}
+
+	/**
+	 * Gives back a token, that was taken but not used.
+	 */
+	public synchronized void refund() {
+		tokens = Math.min(capacity, tokens + 1d);
+	}
+}
@@ -0,0 +1,80 @@
+package eu._4fh.dcvotebot.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+/**
+ * Wraps a DataSource and counts how often the pool and the database are used.
+ */
+public class CountingDataSource {
+	public final AtomicInteger connections = new AtomicInteger();
+	public final AtomicInteger statements = new AtomicInteger();
+	public final AtomicInteger commits = new AtomicInteger();
+	public final AtomicInteger rollbacks = new AtomicInteger();
+
+	public DataSource wrap(final DataSource dataSource) {
+		return proxy(DataSource.class, dataSource, (method, result) -> {
+			if ("getConnection".equals(method.getName())) {
+				connections.incrementAndGet();
+				return proxy(Connection.class, (Connection) result, this::connectionResult);
+			}
+			return result;
+		});
+	}
+
+	private Object connectionResult(final Method method, final Object result) {
+		switch (method.getName()) {
+		case "commit":
+			commits.incrementAndGet();
+			return result;
+		case "rollback":
+			rollbacks.incrementAndGet();
+			return result;
+		case "prepareStatement":
+			return proxy(PreparedStatement.class, (PreparedStatement) result, (stmtMethod, stmtResult) -> {
+				if (stmtMethod.getName().startsWith("execute")) {
+					statements.incrementAndGet();
+				}
+				return stmtResult;
+			});
+		default:
+			return result;
+		}
+	}
+
+	/**
+	 * Executed statements, commits and rollbacks. Each of them is one round-trip to the database.
+	 */
+	public int roundTrips() {
+		return statements.get() + commits.get() + rollbacks.get();
+	}
+
+	public void reset() {
+		connections.set(0);
+		statements.set(0);
+		commits.set(0);
+		rollbacks.set(0);
+	}
+
+	private interface ResultHandler {
+		Object handle(Method method, Object result);
+	}
+
+	private static <T> T proxy(final Class<T> clazz, final T delegate, final ResultHandler resultHandler) {
+		final InvocationHandler handler = (proxy, method, args) -> {
+			try {
+				return resultHandler.handle(method, method.invoke(delegate, args));
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		};
+		return clazz.cast(Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[] { clazz }, handler));
+	}
+}
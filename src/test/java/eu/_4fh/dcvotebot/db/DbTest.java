@@ -4,16 +4,21 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import eu._4fh.dcvotebot.db.Db.NotFoundException;
 import eu._4fh.dcvotebot.db.Db.Transaction;
+import eu._4fh.dcvotebot.util.CacheMetrics;
+import eu._4fh.dcvotebot.util.Config;
 
 class DbTest {
 	private Db db;
@@ -56,6 +61,13 @@ class DbTest {
 		try (Transaction trans = db.getTransaction(2)) {
 			assertThatThrownBy(() -> db.getVote(trans, 1)).isInstanceOf(NotFoundException.class);
 		}
+		db.forTestResetCaches();
+		try (Transaction trans = db.getTransaction(2)) {
+			assertThatThrownBy(() -> db.getVote(trans, 1)).isInstanceOf(NotFoundException.class);
+		}
+		try (Transaction trans = db.getTransaction(1)) {
+			assertThat(db.getVote(trans, 1).title).isEqualTo(vote.title);
+		}
 	}
 
 	@Test
@@ -87,6 +99,142 @@ class DbTest {
 		assertThat(vote.options).map(o -> o.name).containsExactly("Opt1", "Opt2");
 	}
 
+	@Test
+	void changedDefaultsInvalidateCachedVotes() {
+		final VoteSettings defaultSettings = new VoteSettings((byte) 1, 60, true, "Europe/Berlin");
+		try (Transaction trans = db.getTransaction(1L)) {
+			db.insertVote(trans, 1L, Vote.create(VoteSettings.getDefault(), 100, "Title", "Desc",
+					Arrays.asList(VoteOption.create("Opt1"))));
+			assertThat(db.getVote(trans, 1L).settings.timezoneId).isEqualTo(VoteSettings.getDefault().timezoneId);
+			db.setDefaultSettings(trans, defaultSettings);
+		}
+		try (Transaction trans = db.getTransaction(1L)) {
+			assertThat(db.getVote(trans, 1L).settings.timezoneId).isEqualTo("Europe/Berlin");
+		}
+	}
+
+	@Test
+	void readVoteUsesServerTimezone() {
+		final VoteSettings defaultSettings = new VoteSettings((byte) 1, 60, true, "Europe/Berlin");
+		final Vote newVote = Vote.create(defaultSettings, 100, "Title", "Desc",
+				Arrays.asList(VoteOption.create("Opt1"), VoteOption.create("Opt2")));
+		try (Transaction trans = db.getTransaction(1L)) {
+			db.setDefaultSettings(trans, defaultSettings);
+			db.insertVote(trans, 1L, newVote);
+		}
+		try (Transaction trans = db.getTransaction(2L)) {
+			db.insertVote(trans, 2L, newVote);
+		}
+
+		db.forTestResetCaches();
+		try (Transaction trans = db.getTransaction(1L)) {
+			assertThat(db.getVote(trans, 1L).settings).isEqualTo(defaultSettings);
+		}
+		try (Transaction trans = db.getTransaction(2L)) {
+			assertThat(db.getVote(trans, 2L).settings.timezoneId).isEqualTo(VoteSettings.getDefault().timezoneId);
+		}
+	}
+
+	@Test
+	void insertVoteRoundTrips() {
+		final CountingDataSource dataSource = new CountingDataSource();
+		db = Db.forTestNewDb(dataSource::wrap);
+		final Vote newVote = Vote.create(VoteSettings.getDefault(), 100, "Title", "Desc",
+				Arrays.asList(VoteOption.create("Opt1"), VoteOption.create("Opt2"), VoteOption.create("Opt3"),
+						VoteOption.create("Opt4"), VoteOption.create("Opt5")));
+		try (Transaction trans = db.getTransaction(1L)) {
+			db.getDefaultSettings(trans);
+		}
+
+		dataSource.reset();
+		try (Transaction trans = db.getTransaction(1L)) {
+			db.insertVote(trans, 1L, newVote);
+		}
+		assertThat(dataSource.statements).hasValue(3); // Insert vote, insert all options, select option ids
+		assertThat(dataSource.roundTrips()).isEqualTo(4);
+		final List<VoteOption> cachedOptions;
+		try (Transaction trans = db.getTransaction(1L)) {
+			cachedOptions = db.getVote(trans, 1L).options;
+		}
+		assertThat(cachedOptions).map(o -> o.id).doesNotHaveDuplicates();
+
+		// The ids of the cached vote must be the ones from the database, not only the first generated key
+		db.forTestResetCaches();
+		try (Transaction trans = db.getTransaction(1L)) {
+			assertThat(db.getVote(trans, 1L).options).map(o -> o.name).containsExactly("Opt1", "Opt2", "Opt3", "Opt4",
+					"Opt5");
+			assertThat(db.getVote(trans, 1L).options).map(o -> o.id)
+					.containsExactlyElementsOf(cachedOptions.stream().map(o -> o.id).collect(Collectors.toList()));
+		}
+	}
+
+	@Test
+	void coldGetVoteRoundTrips() {
+		final CountingDataSource dataSource = new CountingDataSource();
+		db = Db.forTestNewDb(dataSource::wrap);
+		final Vote vote;
+		try (Transaction trans = db.getTransaction(1L)) {
+			db.insertVote(trans, 1L, Vote.create(VoteSettings.getDefault(), 100, "Title", "Desc",
+					Arrays.asList(VoteOption.create("Opt1"), VoteOption.create("Opt2"), VoteOption.create("Opt3"))));
+			vote = db.getVote(trans, 1L);
+			db.updateVoteVotes(trans, 2L, 1L, Set.of(vote.options.get(0).id, vote.options.get(2).id));
+			db.updateVoteVotes(trans, 3L, 1L, Set.of(vote.options.get(2).id));
+		}
+
+		db.forTestResetCaches();
+		dataSource.reset();
+		final Vote loadedVote;
+		try (Transaction trans = db.getReadOnlyTransaction(1L)) {
+			loadedVote = db.getVote(trans, 1L);
+		}
+		// Vote, options and voters are loaded with one statement, the rollback ends the transaction
+		assertThat(dataSource.connections).hasValue(1);
+		assertThat(dataSource.statements).hasValue(1);
+		assertThat(dataSource.rollbacks).hasValue(1);
+		assertThat(dataSource.roundTrips()).isEqualTo(2);
+		assertThat(loadedVote.options).<Set<Long>>map(option -> option.voters)
+				.containsExactly(Set.of(2L), Set.of(), Set.of(2L, 3L));
+	}
+
+	@Test
+	void insertedAndUpdatedVoteIsCached() {
+		final CountingDataSource dataSource = new CountingDataSource();
+		db = Db.forTestNewDb(dataSource::wrap);
+		final Vote newVote = Vote.create(VoteSettings.getDefault(), 100, "Title", "Desc",
+				Arrays.asList(VoteOption.create("Opt1"), VoteOption.create("Opt2")));
+		try (Transaction trans = db.getTransaction(1L)) {
+			db.insertVote(trans, 1L, newVote);
+		}
+
+		dataSource.reset();
+		Vote cachedVote;
+		try (Transaction trans = db.getTransaction(1L)) {
+			cachedVote = db.getVote(trans, 1L);
+		}
+		assertThat(dataSource.connections).hasValue(0);
+		assertThat(cachedVote.options).map(o -> o.id).doesNotContain(0L).doesNotHaveDuplicates();
+		assertThat(db.voteCacheWeight()).isEqualTo(3L);
+
+		try (Transaction trans = db.getTransaction(1L)) {
+			db.updateVoteVotes(trans, 2L, 1L, Set.of(cachedVote.options.get(1).id));
+			final Vote editedVote = Vote.createWithDefaults(null, "Title2", null, newVote);
+			db.updateVote(trans, 1L, editedVote);
+		}
+		dataSource.reset();
+		try (Transaction trans = db.getTransaction(1L)) {
+			cachedVote = db.getVote(trans, 1L);
+		}
+		assertThat(dataSource.connections).hasValue(0);
+		assertThat(cachedVote.title).isEqualTo("Title2");
+		assertThat(cachedVote.options).<Set<Long>>map(option -> option.voters).containsExactly(Set.of(), Set.of(2L));
+		assertThat(db.voteCacheWeight()).isEqualTo(4L);
+
+		db.forTestResetCaches();
+		try (Transaction trans = db.getTransaction(1L)) {
+			assertThat(db.getVote(trans, 1L)).isEqualTo(cachedVote);
+		}
+	}
+
 	@Test
 	void testDoVote() {
 		Vote vote = Vote.create(VoteSettings.getDefault(), 100, "Title", "Desc",
@@ -104,13 +252,40 @@ class DbTest {
 			vote = db.getVote(trans, 1L);
 		}
 		assertThat(vote.options).hasSize(3);
-		assertThat(vote.options).map(option -> option.voters).containsExactly(Set.of(2L), Set.of(), Set.of(2L));
+		assertThat(vote.options).<Set<Long>>map(option -> option.voters)
+				.containsExactly(Set.of(2L), Set.of(), Set.of(2L));
 		db.forTestResetCaches();
 		try (Transaction trans = db.getTransaction(1L)) {
 			vote = db.getVote(trans, 1L);
 		}
 		assertThat(vote.options).hasSize(3);
-		assertThat(vote.options).map(option -> option.voters).containsExactly(Set.of(2L), Set.of(), Set.of(2L));
+		assertThat(vote.options).<Set<Long>>map(option -> option.voters)
+				.containsExactly(Set.of(2L), Set.of(), Set.of(2L));
+	}
+
+	@Test
+	void testChangeVoteUpdatesCachedVote() {
+		Vote vote = Vote.create(VoteSettings.getDefault(), 100, "Title", "Desc",
+				Arrays.asList(VoteOption.create("Opt1"), VoteOption.create("Opt2"), VoteOption.create("Opt3")));
+		try (Transaction trans = db.getTransaction(1L)) {
+			db.insertVote(trans, 1L, vote);
+			vote = db.getVote(trans, 1L);
+		}
+		try (Transaction trans = db.getTransaction(1L)) {
+			db.updateVoteVotes(trans, 2L, 1L, Set.of(vote.options.get(0).id, vote.options.get(2).id));
+			db.updateVoteVotes(trans, 3L, 1L, Set.of(vote.options.get(2).id));
+			db.updateVoteVotes(trans, 2L, 1L, Set.of(vote.options.get(1).id));
+			vote = db.getVote(trans, 1L);
+		}
+		assertThat(vote.options).<Set<Long>>map(option -> option.voters)
+				.containsExactly(Set.of(), Set.of(2L), Set.of(3L));
+
+		final Vote cachedVote = vote;
+		db.forTestResetCaches();
+		try (Transaction trans = db.getTransaction(1L)) {
+			vote = db.getVote(trans, 1L);
+		}
+		assertThat(vote).isEqualTo(cachedVote);
 	}
 
 	@Test
@@ -142,6 +317,153 @@ class DbTest {
 		assertThat(voteFromDb).isEqualTo(vote);
 	}
 
+	@Test
+	void testUpdateVoteMovesEndTime() {
+		final Instant start = Instant.now().minus(Duration.ofHours(2));
+		Vote vote = Vote.createForTest(VoteSettings.getDefault(), 1L, "Title", "Desc",
+				List.of(VoteOption.create("Opt1")), start);
+		try (Transaction trans = db.getTransaction(1)) {
+			db.insertVote(trans, 1, vote);
+		}
+		final long now = Instant.now().getEpochSecond();
+		assertThat(db.getVotesToLastUpdate(now)).isEmpty();
+
+		vote = Vote.createWithDefaults(VoteSettings.createWithDefaults(Duration.ofHours(1), null, null, vote.settings),
+				null, null, vote);
+		try (Transaction trans = db.getTransaction(1)) {
+			db.updateVote(trans, 1, vote);
+		}
+		assertThat(db.getVotesToLastUpdate(now)).containsExactly(Pair.of(1L, 1L));
+	}
+
+	@Test
+	void testVoteCacheMetrics() {
+		try (Transaction trans = db.getTransaction(1)) {
+			db.insertVote(trans, 1, Vote.create(VoteSettings.getDefault(), 1L, "Title", "Desc",
+					List.of(VoteOption.create("Opt1"))));
+			db.forTestResetCaches();
+			db.getVote(trans, 1);
+			db.getVote(trans, 1);
+		}
+		assertThat(CacheMetrics.prometheusText()).contains("dcvotebot_cache_hits_total{cache=\"votes\"} 1.0\n",
+				"dcvotebot_cache_misses_total{cache=\"votes\"} 1.0\n", "dcvotebot_cache_size{cache=\"votes\"} 1.0\n",
+				"# TYPE dcvotebot_cache_evictions_total counter\n");
+	}
+
+	@Test
+	void testAsyncDbMetrics() {
+		final AsyncDb asyncDb = AsyncDb.forTestDirectExecutor();
+		asyncDb.read(1, (db, trans) -> db.getDefaultSettings(trans)).join();
+		assertThat(CacheMetrics.prometheusText()).contains("# TYPE dcvotebot_db_queue_length gauge\n",
+				"dcvotebot_db_queue_length 0\n", "# TYPE dcvotebot_db_started_calls_total counter\n",
+				"dcvotebot_db_started_calls_total 1\n", "dcvotebot_db_queue_wait_milliseconds_total ");
+	}
+
+	@Test
+	void unknownVoteIsRememberedUntilInserted() {
+		final CountingDataSource dataSource = new CountingDataSource();
+		db = Db.forTestNewDb(dataSource::wrap);
+		for (int i = 0; i < 3; ++i) {
+			try (Transaction trans = db.getReadOnlyTransaction(1)) {
+				assertThatThrownBy(() -> db.getVote(trans, 1)).isInstanceOf(NotFoundException.class);
+			}
+		}
+		assertThat(dataSource.statements).hasValue(1);
+
+		final Vote vote = Vote.create(VoteSettings.getDefault(), 1L, "Title", "Desc",
+				List.of(VoteOption.create("Opt1")));
+		try (Transaction trans = db.getTransaction(1)) {
+			db.insertVote(trans, 1, vote);
+		}
+		db.forTestResetVotesCache();
+		try (Transaction trans = db.getReadOnlyTransaction(1)) {
+			assertThat(db.getVote(trans, 1).title).isEqualTo(vote.title);
+		}
+	}
+
+	@Test
+	void testWarmUpVotes() {
+		final CountingDataSource dataSource = new CountingDataSource();
+		db = Db.forTestNewDb(dataSource::wrap);
+		try (Transaction trans = db.getTransaction(1)) {
+			db.insertVote(trans, 1, Vote.create(VoteSettings.getDefault(), 1L, "Running", "Desc",
+					List.of(VoteOption.create("Opt1"), VoteOption.create("Opt2"))));
+			db.insertVote(trans, 2, Vote.createForTest(VoteSettings.getDefault(), 1L, "Ended", "Desc",
+					List.of(VoteOption.create("Opt1")), Instant.now().minus(Duration.ofDays(2))));
+			final Vote vote = db.getVote(trans, 1);
+			db.updateVoteVotes(trans, 10L, 1, Set.of(vote.options.get(1).id));
+			db.updateVoteVotes(trans, 11L, 1, Set.of(vote.options.get(0).id, vote.options.get(1).id));
+		}
+		try (Transaction trans = db.getTransaction(2)) {
+			db.insertVote(trans, 3, Vote.create(VoteSettings.getDefault(), 1L, "Other server", "Desc",
+					List.of(VoteOption.create("Opt1"))));
+		}
+		final Vote expected;
+		try (Transaction trans = db.getTransaction(1)) {
+			expected = db.getVote(trans, 1);
+		}
+		db.forTestResetCaches();
+
+		dataSource.reset();
+		try (Transaction trans = db.getReadOnlyTransaction(1)) {
+			assertThat(db.warmUpVotes(trans, Instant.now().getEpochSecond())).isEqualTo(1);
+		}
+		// Default settings plus three queries
+		assertThat(dataSource.statements).hasValue(4);
+
+		dataSource.reset();
+		try (Transaction trans = db.getReadOnlyTransaction(1)) {
+			assertThat(db.getVote(trans, 1)).isEqualTo(expected);
+			assertThat(db.warmUpVotes(trans, Instant.now().getEpochSecond())).isZero();
+		}
+		assertThat(dataSource.statements).hasValue(3);
+	}
+
+	@Test
+	void testCachedVoteExpiresAfterEnd() {
+		final Duration afterEnd = Duration.ofMinutes(Config.instance().updateVotesTimeoutMinutes);
+		try (Transaction trans = db.getTransaction(1)) {
+			db.insertVote(trans, 1, Vote.create(VoteSettings.getDefault(), 1L, "Title", "Desc",
+					List.of(VoteOption.create("Opt1"))));
+			db.insertVote(trans, 2, Vote.createForTest(VoteSettings.getDefault(), 1L, "Title", "Desc",
+					List.of(VoteOption.create("Opt1")), Instant.now().minus(Duration.ofDays(2))));
+		}
+		assertThat(db.forTestVoteExpiresAfter(1).orElseThrow())
+				.isGreaterThan(VoteSettings.getDefault().duration.minusMinutes(1).plus(afterEnd));
+		assertThat(db.forTestVoteExpiresAfter(2).orElseThrow()).isNotEqualTo(Duration.ZERO)
+				.isLessThanOrEqualTo(afterEnd);
+	}
+
+	@Test
+	void testDeleteOldVotesInBatches() {
+		final Instant start = Instant.now().minus(Duration.ofDays(5));
+		final Vote vote = Vote.createForTest(VoteSettings.getDefault(), 1L, "Title", "Desc",
+				List.of(VoteOption.create("Opt1"), VoteOption.create("Opt2")), start);
+		try (Transaction trans = db.getTransaction(1)) {
+			for (long msgId = 1; msgId <= 3; ++msgId) {
+				db.insertVote(trans, msgId, vote);
+				final Vote voteFromDb = db.getVote(trans, msgId);
+				db.updateVoteVotes(trans, 10L, msgId, Set.of(voteFromDb.options.get(0).id));
+			}
+			db.insertVote(trans, 4, Vote.create(VoteSettings.getDefault(), 1L, "Title", "Desc",
+					List.of(VoteOption.create("Opt1"))));
+		}
+
+		final long deleteBefore = Instant.now().getEpochSecond();
+		final Db.DeletedRows firstBatch = db.deleteOldVotes(deleteBefore, 2);
+		assertThat(firstBatch.votes).isEqualTo(2);
+		assertThat(firstBatch.voteOptions).isEqualTo(4);
+		assertThat(firstBatch.votersVotes).isEqualTo(2);
+		final Db.DeletedRows secondBatch = db.deleteOldVotes(deleteBefore, 2);
+		assertThat(secondBatch.votes).isEqualTo(1);
+		assertThat(db.deleteOldVotes(deleteBefore, 2).votes).isZero();
+
+		try (Transaction trans = db.getTransaction(1)) {
+			assertThat(db.getAllServerVoteIds(trans)).containsExactly(4L);
+			assertThatThrownBy(() -> db.getVote(trans, 1)).isInstanceOf(NotFoundException.class);
+		}
+	}
+
 	@Test
 	void testGetAllServerVotes() {
 		try (Transaction trans = db.getTransaction(1)) {
@@ -159,4 +481,43 @@ class DbTest {
 			assertThat(db.getAllServerVoteIds(trans)).containsExactlyInAnyOrder(-1L, Long.MAX_VALUE, Long.MIN_VALUE);
 		}
 	}
+
+	@Test
+	void testSearchVoteTitles() {
+		final CountingDataSource dataSource = new CountingDataSource();
+		db = Db.forTestNewDb(dataSource::wrap);
+		final Instant start = Instant.now();
+		try (Transaction trans = db.getTransaction(1)) {
+			db.insertVote(trans, 1, Vote.createForTest(VoteSettings.getDefault(), 1L, "Lunch today", "Desc",
+					List.of(VoteOption.create("Opt")), start.minus(Duration.ofDays(1))));
+			db.insertVote(trans, 2, Vote.createForTest(VoteSettings.getDefault(), 1L, "Next lunch", "Desc",
+					List.of(VoteOption.create("Opt")), start));
+			db.insertVote(trans, 3, Vote.createForTest(VoteSettings.getDefault(), 1L, "Lunch tomorrow", "Desc",
+					List.of(VoteOption.create("Opt")), start));
+		}
+		try (Transaction trans = db.getTransaction(2)) {
+			db.insertVote(trans, 4, Vote.create(VoteSettings.getDefault(), 1L, "Lunch", "Desc",
+					List.of(VoteOption.create("Opt"))));
+		}
+
+		dataSource.reset();
+		try (Transaction trans = db.getReadOnlyTransaction(1)) {
+			assertThat(db.searchVoteTitles(trans, "lunch", 25)).map(title -> title.messageId).containsExactly(3L,
+					1L, 2L);
+			assertThat(db.searchVoteTitles(trans, " LUNCH T", 25)).map(title -> title.messageId).containsExactly(3L,
+					1L);
+			assertThat(db.searchVoteTitles(trans, "", 2)).map(title -> title.messageId).containsExactly(2L, 3L);
+		}
+		assertThat(dataSource.statements).hasValue(1);
+
+		try (Transaction trans = db.getTransaction(1)) {
+			final Vote vote = db.getVote(trans, 2);
+			db.updateVote(trans, 2, Vote.createWithDefaults(null, "Dinner", null, vote));
+			assertThat(db.searchVoteTitles(trans, "dinner", 25)).map(title -> title.title).containsExactly("Dinner");
+		}
+		db.deleteOldVotes(start.plusSeconds(1).getEpochSecond(), 10);
+		try (Transaction trans = db.getTransaction(1)) {
+			assertThat(db.searchVoteTitles(trans, "lunch", 25)).map(title -> title.messageId).containsExactly(3L);
+		}
+	}
 }
@@ -0,0 +1,47 @@
+package eu._4fh.dcvotebot.db;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class VoterIdsTest {
+	@Test
+	void testSortedAndUnique() {
+		final VoterIds ids = new VoterIds.Builder().add(5).add(1).add(5).add(Long.MAX_VALUE).add(3).build();
+		assertThat(ids).containsExactly(1L, 3L, 5L, Long.MAX_VALUE);
+		assertThat(ids.contains(3L)).isTrue();
+		assertThat(ids.contains(4L)).isFalse();
+		assertThat(ids.contains("3")).isFalse();
+	}
+
+	@Test
+	void testWithAndWithout() {
+		final VoterIds ids = VoterIds.of(2, 4);
+		assertThat(ids.with(3)).containsExactly(2L, 3L, 4L);
+		assertThat(ids.with(1)).containsExactly(1L, 2L, 4L);
+		assertThat(ids.with(5)).containsExactly(2L, 4L, 5L);
+		assertThat(ids.with(2)).isSameAs(ids);
+		assertThat(ids.without(2)).containsExactly(4L);
+		assertThat(ids.without(3)).isSameAs(ids);
+		assertThat(ids.without(2).without(4)).isSameAs(VoterIds.empty());
+		assertThat(ids).containsExactly(2L, 4L);
+	}
+
+	@Test
+	void testEqualsOtherSets() {
+		final VoterIds ids = VoterIds.of(7, 1);
+		assertThat(ids).isEqualTo(Set.of(1L, 7L));
+		assertThat(Set.of(1L, 7L)).isEqualTo(ids);
+		assertThat(ids.hashCode()).isEqualTo(Set.of(1L, 7L).hashCode());
+		assertThat(ids).isEqualTo(VoterIds.of(1, 7)).isNotEqualTo(VoterIds.of(1));
+	}
+
+	@Test
+	void testUnion() {
+		assertThat(VoterIds.union(Arrays.asList(VoterIds.of(1, 3), VoterIds.empty(), VoterIds.of(3, 2))))
+				.containsExactly(1L, 2L, 3L);
+	}
+}
@@ -16,6 +16,7 @@ import org.easymock.EasyMock;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import eu._4fh.dcvotebot.db.AsyncDb;
 import eu._4fh.dcvotebot.db.Db;
 import eu._4fh.dcvotebot.db.Db.Transaction;
 import eu._4fh.dcvotebot.db.Vote;
@@ -30,6 +31,8 @@ class CreateVoteHandlerTest {
 
 	@BeforeEach
 	void setupHandler() {
+		Db.forTestNewDb();
+		AsyncDb.forTestDirectExecutor();
 		handler = new CreateVoteHandler(DiscordMocks.botMock());
 	}
 
@@ -3,6 +3,8 @@ package eu._4fh.dcvotebot.discord;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.easymock.EasyMock;
 
 import net.dv8tion.jda.api.entities.Guild;
@@ -32,8 +34,8 @@ import net.dv8tion.jda.api.requests.restaction.interactions.ReplyCallbackAction;
 		final Bot bot = EasyMock.strictMock(Bot.class);
 		bot.updateVoteText(EasyMock.anyLong(), EasyMock.anyLong());
 		expectLastCall().asStub();
-		bot.updateMessage(EasyMock.anyLong(), EasyMock.anyLong(), EasyMock.anyLong(), EasyMock.anyString());
-		expectLastCall().asStub();
+		expect(bot.updateMessage(EasyMock.anyLong(), EasyMock.anyLong(), EasyMock.anyLong(), EasyMock.anyString()))
+				.andStubReturn(CompletableFuture.completedFuture(null));
 		EasyMock.replay(bot);
 		return bot;
 	}
@@ -77,7 +79,6 @@ import net.dv8tion.jda.api.requests.restaction.interactions.ReplyCallbackAction;
 	/*package*/ static ModalInteractionEvent modalInteractionEvent(final String modalId, final long serverId,
 			final long messageId) {
 		final ReplyCallbackAction callback = EasyMock.niceMock(ReplyCallbackAction.class);
-		EasyMock.replay(callback);
 
 		final ModalInteractionEvent event = EasyMock.strictMock(ModalInteractionEvent.class);
 		expect(event.getModalId()).andStubReturn(modalId);
@@ -97,12 +98,14 @@ import net.dv8tion.jda.api.requests.restaction.interactions.ReplyCallbackAction;
 		// Hook
 		final InteractionHook hook = EasyMock.strictMock(InteractionHook.class);
 		expect(event.getHook()).andStubReturn(hook);
+		expect(callback.submit()).andStubReturn(CompletableFuture.completedFuture(hook));
+		EasyMock.replay(callback);
 
 		// Get original message id
 		final Message message = EasyMock.strictMock(Message.class);
 		expect(message.getIdLong()).andStubReturn(messageId);
 		final RestAction<Message> restAction = EasyMock.strictMock(RestAction.class);
-		expect(restAction.complete()).andStubReturn(message);
+		expect(restAction.submit()).andStubReturn(CompletableFuture.completedFuture(message));
 		expect(hook.retrieveOriginal()).andStubReturn(restAction);
 		EasyMock.replay(message, restAction);
 
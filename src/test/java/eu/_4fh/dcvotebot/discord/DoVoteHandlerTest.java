@@ -2,6 +2,7 @@ package eu._4fh.dcvotebot.discord;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
 
 import java.time.Duration;
 import java.time.Instant;
@@ -16,6 +17,8 @@ import org.easymock.EasyMock;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import eu._4fh.dcvotebot.db.AsyncDb;
+import eu._4fh.dcvotebot.db.CountingDataSource;
 import eu._4fh.dcvotebot.db.Db;
 import eu._4fh.dcvotebot.db.Vote;
 import eu._4fh.dcvotebot.db.VoteOption;
@@ -33,6 +36,7 @@ import net.dv8tion.jda.api.requests.restaction.WebhookMessageEditAction;
 class DoVoteHandlerTest {
 	private DoVoteHandler handler;
 	private Db db;
+	private CountingDataSource dataSource;
 	private static long userId = 1_000_000;
 	private static long serverId = 2_000_000;
 	private static long channelId = 3_000_000;
@@ -40,7 +44,9 @@ class DoVoteHandlerTest {
 
 	@BeforeEach
 	void setupHandler() {
-		db = Db.forTestNewDb();
+		dataSource = new CountingDataSource();
+		db = Db.forTestNewDb(dataSource::wrap);
+		AsyncDb.forTestDirectExecutor();
 		handler = new DoVoteHandler(DiscordMocks.botMock());
 	}
 
@@ -84,9 +90,7 @@ class DoVoteHandlerTest {
 		return nextVoteMsgId++;
 	}
 
-	@Test
-	void testVote() {
-		final long msgId = setupVote(Instant.now());
+	private static ButtonInteractionEvent startButtonEvent(final long msgId) {
 		final ButtonInteractionEvent startBtnEvent = EasyMock.strictMock(ButtonInteractionEvent.class);
 		expect(startBtnEvent.deferReply(true)).andStubReturn(DiscordMocks.stubReply());
 		expect(startBtnEvent.getMessageIdLong()).andStubReturn(msgId);
@@ -94,6 +98,11 @@ class DoVoteHandlerTest {
 		expect(startBtnEvent.getUser()).andStubReturn(DiscordMocks.user(userId));
 		expect(startBtnEvent.getHook()).andStubReturn(interactionHook(stubMessageCreateRequest()));
 		EasyMock.replay(startBtnEvent);
+		return startBtnEvent;
+	}
+
+	private void vote(final long msgId) {
+		final ButtonInteractionEvent startBtnEvent = startButtonEvent(msgId);
 		handler.startVote(startBtnEvent);
 
 		final StringSelectInteractionEvent ssiEvent = EasyMock.strictMock(StringSelectInteractionEvent.class);
@@ -116,14 +125,73 @@ class DoVoteHandlerTest {
 		EasyMock.replay(voteBtnEvent);
 		handler.onButtonInteraction(voteBtnEvent);
 		EasyMock.verify(startBtnEvent, ssiEvent, voteBtnEvent, interactionHook);
+	}
+
+	@Test
+	void testVote() {
+		final long msgId = setupVote(Instant.now());
+		vote(msgId);
 
 		try (Db.Transaction trans = db.getTransaction(serverId)) {
 			final Vote vote = db.getVote(trans, msgId);
-			assertThat(vote.options).map(option -> option.voters).containsExactly(Set.of(userId), Set.of(),
+			assertThat(vote.options).<Set<Long>>map(option -> option.voters).containsExactly(Set.of(userId), Set.of(),
 					Set.of(userId));
 		}
 	}
 
+	@Test
+	void testVoteSavedWhenUpdateCantBeQueued() {
+		final long msgId = setupVote(Instant.now());
+		final Bot bot = EasyMock.strictMock(Bot.class);
+		bot.updateVoteText(serverId, msgId);
+		expectLastCall().andThrow(new IllegalStateException("Test"));
+		EasyMock.replay(bot);
+		handler = new DoVoteHandler(bot);
+		vote(msgId);
+		EasyMock.verify(bot);
+	}
+
+	@Test
+	void testStartVoteFromCacheUsesNoConnection() {
+		final long msgId = setupVote(Instant.now());
+		try (Db.Transaction trans = db.getTransaction(serverId)) {
+			db.getVote(trans, msgId);
+		}
+
+		dataSource.reset();
+		final ButtonInteractionEvent startBtnEvent = startButtonEvent(msgId);
+		handler.startVote(startBtnEvent);
+		EasyMock.verify(startBtnEvent);
+		assertThat(dataSource.connections).hasValue(0);
+	}
+
+	@Test
+	void testRoundTripsPerAnswer() {
+		final long msgId = setupVote(Instant.now());
+		final Vote vote;
+		try (Db.Transaction trans = db.getTransaction(serverId)) {
+			vote = db.getVote(trans, msgId);
+		}
+
+		dataSource.reset();
+		final InteractionHook hook = editHook(
+				"Saved your answer. It could take some minutes until the poll-message shows your answers.");
+		final ButtonInteractionEvent event = EasyMock.strictMock(ButtonInteractionEvent.class);
+		expect(event.getUser()).andStubReturn(DiscordMocks.user(userId));
+		expect(event.getGuild()).andStubReturn(DiscordMocks.guild(serverId));
+		expect(event.getHook()).andStubReturn(hook);
+		EasyMock.replay(event);
+		handler.handleVote(event, createVoteData(msgId, 0, 2), vote).join();
+		EasyMock.verify(event, hook);
+
+		assertThat(dataSource.connections).hasValue(1);
+		// Lock the vote, check for old answers, insert both new answers
+		assertThat(dataSource.statements).hasValue(3);
+		assertThat(dataSource.commits).hasValue(1);
+		assertThat(dataSource.rollbacks).hasValue(0);
+		assertThat(dataSource.roundTrips()).isEqualTo(4);
+	}
+
 	private VoteData createVoteData(final long voteMsgId, final int... votes) {
 		final VoteData data = new VoteData(voteMsgId);
 		for (int vote : votes) {
@@ -145,7 +213,7 @@ class DoVoteHandlerTest {
 		final ButtonInteractionEvent event = simpleButtonInteraction(hook);
 		try (Db.Transaction trans = db.getTransaction(serverId)) {
 			final Vote vote = db.getVote(trans, voteMsgId);
-			handler.handleVote(db, event, voteData, vote);
+			handler.handleVote(event, voteData, vote).join();
 		}
 		EasyMock.verify(event, hook);
 	}
@@ -166,6 +234,30 @@ class DoVoteHandlerTest {
 		testVoteFailedMsg(createVoteData(msgId, 0, 2), msgId, "You already voted and can't change your answer.");
 	}
 
+	@Test
+	void testAlreadyVotedSinceVoteWasRead() {
+		final long msgId = setupVote(Instant.now());
+		final Vote vote;
+		try (Db.Transaction trans = db.getTransaction(serverId)) {
+			vote = db.getVote(trans, msgId);
+			db.updateVoteVotes(trans, userId, msgId, Set.of(vote.options.get(0).id));
+		}
+
+		final InteractionHook hook = editHook("You already voted and can't change your answer.");
+		final ButtonInteractionEvent event = EasyMock.strictMock(ButtonInteractionEvent.class);
+		expect(event.getUser()).andStubReturn(DiscordMocks.user(userId));
+		expect(event.getGuild()).andStubReturn(DiscordMocks.guild(serverId));
+		expect(event.getHook()).andStubReturn(hook);
+		EasyMock.replay(event);
+		handler.handleVote(event, createVoteData(msgId, 2), vote).join();
+		EasyMock.verify(event, hook);
+
+		try (Db.Transaction trans = db.getTransaction(serverId)) {
+			assertThat(db.getVote(trans, msgId).options).<Set<Long>>map(option -> option.voters)
+					.containsExactly(Set.of(userId), Set.of(), Set.of());
+		}
+	}
+
 	@Test
 	void testNoAnswerSelected() {
 		final long msgId = setupVote(Instant.now());
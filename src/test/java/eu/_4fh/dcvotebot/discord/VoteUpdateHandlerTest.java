@@ -3,14 +3,18 @@ package eu._4fh.dcvotebot.discord;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatNoException;
 import static org.easymock.EasyMock.expect;
-import static org.easymock.EasyMock.expectLastCall;
 
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.easymock.EasyMock;
@@ -18,12 +22,18 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import eu._4fh.dcvotebot.db.AsyncDb;
+import eu._4fh.dcvotebot.db.CountingDataSource;
 import eu._4fh.dcvotebot.db.Db;
 import eu._4fh.dcvotebot.db.Vote;
 import eu._4fh.dcvotebot.db.VoteOption;
 import eu._4fh.dcvotebot.db.VoteSettings;
+import eu._4fh.dcvotebot.util.Config;
 import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
 import net.dv8tion.jda.api.events.guild.GuildReadyEvent;
+import net.dv8tion.jda.api.events.http.HttpRequestEvent;
+import net.dv8tion.jda.api.requests.Route;
 
 class VoteUpdateHandlerTest {
 	private static final long SERVER_ID = 2_000_000L;
@@ -57,11 +67,10 @@ class VoteUpdateHandlerTest {
 
 	@Test
 	void testUpdateVote() throws InterruptedException {
-		bot.updateMessage(EasyMock.eq(SERVER_ID), EasyMock.eq(CHANNEL_ID), EasyMock.eq(voteId),
-				EasyMock.contains("**Vote1**\n\nTest Vote\n\n"));
-		expectLastCall();
+		expect(bot.updateMessage(EasyMock.eq(SERVER_ID), EasyMock.eq(CHANNEL_ID), EasyMock.eq(voteId),
+				EasyMock.contains("**Vote1**\n\nTest Vote\n\n"))).andReturn(CompletableFuture.completedFuture(null));
 		EasyMock.replay(bot);
-		handler = new VoteUpdateHandler(bot);
+		handler = newHandler();
 
 		final Guild guild = EasyMock.strictMock(Guild.class);
 		expect(guild.getIdLong()).andStubReturn(SERVER_ID);
@@ -75,27 +84,374 @@ class VoteUpdateHandlerTest {
 		handler.updateVote();
 	}
 
+	@Test
+	void testEditRateAdaptsToRateLimits() {
+		expect(bot.updateMessage(EasyMock.eq(SERVER_ID), EasyMock.eq(CHANNEL_ID), EasyMock.eq(voteId),
+				EasyMock.anyString())).andReturn(CompletableFuture.completedFuture(null));
+		EasyMock.replay(bot);
+		handler = newHandler();
+		final double minRate = Config.instance().updateMinEditsPerSecond;
+		assertThat(handler.editRate().perSecond()).isEqualTo(minRate);
+
+		handler.onGuildReady(readyEvent(SERVER_ID));
+		handler.addToUpdateVote(SERVER_ID, voteId);
+		handler.updateVote();
+		assertThat(handler.editRate().perSecond()).isGreaterThan(minRate);
+
+		final HttpRequestEvent rateLimited = EasyMock.niceMock(HttpRequestEvent.class);
+		expect(rateLimited.isRateLimit()).andStubReturn(true);
+		expect(rateLimited.getRoute()).andStubReturn(Route.Messages.EDIT_MESSAGE.compile("1", "2"));
+		EasyMock.replay(rateLimited);
+		handler.onHttpRequest(rateLimited);
+		handler.onHttpRequest(rateLimited);
+		assertThat(handler.editRate().perSecond()).isEqualTo(minRate);
+		assertThat(handler.editRate().backoffs()).isEqualTo(1);
+		assertThat(handler.editRate().lastBackoff()).isNotNull();
+	}
+
+	@Test
+	void testNoSkipWhileAnEditIsInFlight() {
+		final CompletableFuture<Void> pendingEdit = new CompletableFuture<>();
+		expect(bot.updateMessage(EasyMock.eq(SERVER_ID), EasyMock.eq(CHANNEL_ID), EasyMock.eq(voteId),
+				EasyMock.contains("**Vote" + voteId + "**"))).andReturn(CompletableFuture.completedFuture(null));
+		expect(bot.updateMessage(EasyMock.eq(SERVER_ID), EasyMock.eq(CHANNEL_ID), EasyMock.eq(voteId),
+				EasyMock.contains("**Changed**"))).andReturn(pendingEdit);
+		EasyMock.replay(bot);
+		handler = newHandler();
+		handler.onGuildReady(readyEvent(SERVER_ID));
+		handler.addToUpdateVote(SERVER_ID, voteId);
+		handler.updateVote();
+
+		final Vote original = getVote(voteId);
+		setVoteTitle(original, "Changed");
+		handler.addToUpdateVote(SERVER_ID, voteId);
+		handler.dispatchUpdates(); // Doesn't wait for the pending edit
+
+		// Back to the text of the first edit, but the message will show the pending one
+		setVoteTitle(original, original.title);
+		handler.addToUpdateVote(SERVER_ID, voteId);
+		handler.dispatchUpdates();
+		assertThat(handler.skippedUpdates()).isZero();
+		assertThat(handler.todoQueueLength()).isEqualTo(1);
+		pendingEdit.complete(null);
+	}
+
+	private void setVoteTitle(final Vote vote, final String title) {
+		try (Db.Transaction trans = db.getTransaction(SERVER_ID)) {
+			db.updateVote(trans, voteId, Vote.createWithDefaults(null, title, null, vote));
+		}
+	}
+
+	@Test
+	void testDebounceBurstOfAnswers() {
+		expect(bot.updateMessage(EasyMock.eq(SERVER_ID), EasyMock.eq(CHANNEL_ID), EasyMock.eq(voteId),
+				EasyMock.anyString())).andReturn(CompletableFuture.completedFuture(null));
+		EasyMock.replay(bot);
+		final TestClock clock = new TestClock();
+		handler = new VoteUpdateHandler(bot, Duration.ofMillis(600), Duration.ofMillis(1200), clock);
+		handler.onGuildReady(readyEvent(SERVER_ID));
+
+		handler.addToUpdateVote(SERVER_ID, voteId);
+		handler.updateVote(); // Waits for the quiet period
+		assertThat(handler.todoQueueLength()).isEqualTo(1);
+		clock.advance(Duration.ofMillis(400));
+		handler.addToUpdateVote(SERVER_ID, voteId);
+		clock.advance(Duration.ofMillis(400));
+		handler.updateVote(); // Quiet period starts again with every answer
+		assertThat(handler.todoQueueLength()).isEqualTo(1);
+		clock.advance(Duration.ofMillis(300));
+		handler.addToUpdateVote(SERVER_ID, voteId);
+		clock.advance(Duration.ofMillis(99));
+		handler.updateVote();
+		assertThat(handler.todoQueueLength()).isEqualTo(1);
+		clock.advance(Duration.ofMillis(1));
+		handler.updateVote(); // But it waits no longer than the max delay
+		assertThat(handler.todoQueueLength()).isZero();
+	}
+
+	@Test
+	void testWarmUpReadyGuild() {
+		final CountingDataSource dataSource = new CountingDataSource();
+		db = Db.forTestNewDb(dataSource::wrap);
+		try (Db.Transaction trans = db.getTransaction(SERVER_ID)) {
+			db.insertVote(trans, voteId, Vote.create(VoteSettings.getDefault(), CHANNEL_ID, "Vote", "Test Vote",
+					List.of(VoteOption.create("Opt1"))));
+		}
+		db.forTestResetCaches();
+		EasyMock.replay(bot);
+		handler = newHandler();
+
+		handler.onGuildReady(readyEvent(SERVER_ID));
+		handler.warmUpNextGuild();
+
+		dataSource.reset();
+		assertThat(getVote(voteId).title).isEqualTo("Vote");
+		assertThat(dataSource.connections).hasValue(0);
+		handler.warmUpNextGuild(); // Nothing left to warm up
+		assertThat(dataSource.connections).hasValue(0);
+	}
+
+	@Test
+	void testUnavailableGuildIsParked() {
+		final long otherServerId = SERVER_ID + 1;
+		final long otherVoteId = 1_000_000L + voteId;
+		try (Db.Transaction trans = db.getTransaction(otherServerId)) {
+			db.insertVote(trans, otherVoteId, Vote.create(VoteSettings.getDefault(), CHANNEL_ID, "Other", "Test Vote",
+					List.of(VoteOption.create("Opt1"))));
+		}
+		expect(bot.isGuildKnown(otherServerId)).andReturn(true);
+		expect(bot.updateMessage(EasyMock.eq(SERVER_ID), EasyMock.eq(CHANNEL_ID), EasyMock.eq(voteId),
+				EasyMock.anyString())).andReturn(CompletableFuture.completedFuture(null));
+		expect(bot.updateMessage(EasyMock.eq(otherServerId), EasyMock.eq(CHANNEL_ID), EasyMock.eq(otherVoteId),
+				EasyMock.contains("**Other**"))).andReturn(CompletableFuture.completedFuture(null));
+		EasyMock.replay(bot);
+		handler = newHandler();
+		handler.onGuildReady(readyEvent(SERVER_ID));
+
+		handler.addToUpdateVote(otherServerId, otherVoteId);
+		handler.addToUpdateVote(SERVER_ID, voteId);
+		handler.updateVote();
+		handler.updateVote();
+		assertThat(handler.todoQueueLength()).isEqualTo(1);
+
+		handler.onGuildReady(readyEvent(otherServerId));
+		handler.updateVote();
+		assertThat(handler.todoQueueLength()).isZero();
+	}
+
+	@Test
+	void testLeftGuildIsDropped() {
+		final long leftServerId = SERVER_ID + 1;
+		expect(bot.isGuildKnown(leftServerId)).andReturn(false);
+		EasyMock.replay(bot);
+		handler = newHandler();
+		handler.onGuildReady(readyEvent(SERVER_ID));
+
+		// Left while the bot was offline, so there is no leave event
+		handler.addToUpdateVote(leftServerId, 99L);
+		handler.updateVote();
+		assertThat(handler.todoQueueLength()).isZero();
+
+		db.saveToUpdateVotes(List.of(new Db.ToUpdateVote(SERVER_ID, 98L, null)));
+		handler.loadSavedTodos();
+		handler.addToUpdateVote(SERVER_ID, voteId);
+		final Guild guild = EasyMock.strictMock(Guild.class);
+		expect(guild.getIdLong()).andStubReturn(SERVER_ID);
+		final GuildLeaveEvent event = EasyMock.strictMock(GuildLeaveEvent.class);
+		expect(event.getGuild()).andStubReturn(guild);
+		EasyMock.replay(guild, event);
+		handler.onGuildLeave(event);
+		assertThat(handler.todoQueueLength()).isZero();
+		handler.close();
+		assertThat(db.loadAllToUpdateVotes()).isEmpty();
+	}
+
+	@Test
+	void testChannelLimit() {
+		// Config allows 3 updates per channel, before the channel has to wait
+		for (int i = 0; i < 3; ++i) {
+			try (Db.Transaction trans = db.getTransaction(SERVER_ID)) {
+				db.insertVote(trans, 100 + i, Vote.create(VoteSettings.getDefault(), CHANNEL_ID, "Vote", "Test Vote",
+						List.of(VoteOption.create("Opt1"))));
+			}
+		}
+		expect(bot.updateMessage(EasyMock.eq(SERVER_ID), EasyMock.eq(CHANNEL_ID), EasyMock.anyLong(),
+				EasyMock.anyString())).andReturn(CompletableFuture.completedFuture(null)).times(3);
+		EasyMock.replay(bot);
+		handler = newHandler();
+		handler.onGuildReady(readyEvent(SERVER_ID));
+
+		handler.addToUpdateVote(SERVER_ID, voteId);
+		for (int i = 0; i < 3; ++i) {
+			handler.addToUpdateVote(SERVER_ID, 100 + i);
+		}
+		for (int i = 0; i < 4; ++i) {
+			handler.updateVote();
+		}
+		assertThat(handler.todoQueueLength()).isEqualTo(1);
+	}
+
+	@Test
+	void testChannelIsReleasedAfterSynchronousFailure() {
+		try (Db.Transaction trans = db.getTransaction(SERVER_ID)) {
+			db.insertVote(trans, 100, Vote.create(VoteSettings.getDefault(), CHANNEL_ID, "Vote", "Test Vote",
+					List.of(VoteOption.create("Opt1"))));
+		}
+		// JDA checks for example the permissions before sending and throws directly
+		expect(bot.updateMessage(EasyMock.eq(SERVER_ID), EasyMock.eq(CHANNEL_ID), EasyMock.eq(voteId),
+				EasyMock.anyString())).andThrow(new IllegalArgumentException("Too long"));
+		expect(bot.updateMessage(EasyMock.eq(SERVER_ID), EasyMock.eq(CHANNEL_ID), EasyMock.eq(100L),
+				EasyMock.anyString())).andReturn(CompletableFuture.completedFuture(null));
+		EasyMock.replay(bot);
+		handler = newHandler();
+		handler.onGuildReady(readyEvent(SERVER_ID));
+
+		handler.addToUpdateVote(SERVER_ID, voteId);
+		handler.addToUpdateVote(SERVER_ID, 100);
+		handler.updateVote();
+		handler.updateVote();
+		assertThat(handler.todoQueueLength()).isEqualTo(1); // Only the failed update waits for its retry
+	}
+
+	@Test
+	void testDispatchUpdatesInParallel() {
+		final long otherChannelId = CHANNEL_ID + 1;
+		try (Db.Transaction trans = db.getTransaction(SERVER_ID)) {
+			db.insertVote(trans, 100, Vote.create(VoteSettings.getDefault(), otherChannelId, "Vote", "Test Vote",
+					List.of(VoteOption.create("Opt1"))));
+		}
+		final CompletableFuture<Void> firstEdit = new CompletableFuture<>();
+		final CompletableFuture<Void> secondEdit = new CompletableFuture<>();
+		bot = EasyMock.createMock(Bot.class);
+		expect(bot.updateMessage(SERVER_ID, CHANNEL_ID, voteId, CommandUtil.createVoteText(getVote(voteId))))
+				.andReturn(firstEdit);
+		expect(bot.updateMessage(SERVER_ID, otherChannelId, 100, CommandUtil.createVoteText(getVote(100))))
+				.andReturn(secondEdit);
+		EasyMock.replay(bot);
+		handler = newHandler();
+		handler.onGuildReady(readyEvent(SERVER_ID));
+
+		handler.addToUpdateVote(SERVER_ID, voteId);
+		handler.addToUpdateVote(SERVER_ID, 100);
+		handler.dispatchUpdates();
+		// Both edits are sent, while discord didn't answer the first one yet
+		EasyMock.verify(bot);
+		assertThat(handler.runningUpdates()).isEqualTo(2);
+
+		firstEdit.complete(null);
+		secondEdit.complete(null);
+		assertThat(handler.runningUpdates()).isZero();
+		assertThat(handler.todoQueueLength()).isZero();
+	}
+
+	private VoteUpdateHandler newHandler() {
+		return new VoteUpdateHandler(bot, Duration.ZERO, Duration.ZERO, Clock.systemUTC());
+	}
+
+	private static class TestClock extends Clock {
+		private Instant now = Instant.now();
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(final ZoneId zone) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+
+		private void advance(final Duration duration) {
+			now = now.plus(duration);
+		}
+	}
+
+	private Vote getVote(final long messageId) {
+		try (Db.Transaction trans = db.getReadOnlyTransaction(SERVER_ID)) {
+			return db.getVote(trans, messageId);
+		}
+	}
+
+	private GuildReadyEvent readyEvent(final long guildId) {
+		final Guild guild = EasyMock.strictMock(Guild.class);
+		expect(guild.getIdLong()).andStubReturn(guildId);
+		final GuildReadyEvent event = EasyMock.strictMock(GuildReadyEvent.class);
+		expect(event.getGuild()).andStubReturn(guild);
+		EasyMock.replay(guild, event);
+		return event;
+	}
+
 	@Test
 	void testSaveTodo() {
 		EasyMock.replay(bot);
-		handler = new VoteUpdateHandler(bot);
+		db.saveToUpdateVotes(List.of(new Db.ToUpdateVote(SERVER_ID, 99L, null)));
+		handler = newHandler();
 		handler.addToUpdateVote(SERVER_ID, voteId);
 		handler.close();
-		final Collection<Pair<Long, Long>> toUpdateVotes = db.loadAndDeleteToUpdateVotes(SERVER_ID);
-		assertThat(toUpdateVotes).containsExactlyInAnyOrder(Pair.of(SERVER_ID, voteId));
+		// Replaces the backlog saved before
+		final Collection<Db.ToUpdateVote> toUpdateVotes = db.loadAllToUpdateVotes();
+		assertThat(toUpdateVotes).containsExactlyInAnyOrder(new Db.ToUpdateVote(SERVER_ID, voteId, null));
+	}
+
+	@Test
+	void testQueuedAnswerSavedOnShutdown() {
+		EasyMock.replay(bot);
+		handler = newHandler();
+		final Vote vote = getVote(voteId);
+		final AsyncDb asyncDb = AsyncDb.forTestNewPool();
+		try {
+			asyncDb.write(SERVER_ID, (db, trans) -> {
+				// Still running when the shutdown starts
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+				db.updateVoteVotes(trans, 1L, voteId, Set.of(vote.options.get(0).id));
+				return null;
+			}).thenRun(() -> handler.addToUpdateVote(SERVER_ID, voteId));
+			Bot.saveRunningWork(asyncDb, handler);
+		} finally {
+			AsyncDb.forTestNewPool();
+		}
+		assertThat(db.loadAllToUpdateVotes()).containsExactly(new Db.ToUpdateVote(SERVER_ID, voteId, null));
+	}
+
+	@Test
+	void testSavedTodosParkedUntilGuildReady() {
+		EasyMock.replay(bot);
+		db.saveToUpdateVotes(
+				List.of(new Db.ToUpdateVote(SERVER_ID, voteId, null), new Db.ToUpdateVote(SERVER_ID + 1, 99L, 7L)));
+		handler = newHandler();
+		handler.loadSavedTodos();
+		// Still saved, in case the bot fails before the next shutdown
+		assertThat(db.loadAllToUpdateVotes()).hasSize(2);
+		assertThat(handler.todoQueueLength()).isZero();
+
+		handler.onGuildReady(readyEvent(SERVER_ID));
+		assertThat(handler.todoQueueLength()).isEqualTo(1);
+
+		handler.close();
+		assertThat(db.loadAllToUpdateVotes()).containsExactlyInAnyOrder(
+				new Db.ToUpdateVote(SERVER_ID, voteId, null), new Db.ToUpdateVote(SERVER_ID + 1, 99L, 7L));
+	}
+
+	@Test
+	void testUnchangedTextIsNotSentAgain() {
+		expect(bot.updateMessage(EasyMock.eq(SERVER_ID), EasyMock.eq(CHANNEL_ID), EasyMock.eq(voteId),
+				EasyMock.anyString())).andReturn(CompletableFuture.completedFuture(null));
+		EasyMock.replay(bot);
+		handler = newHandler();
+		handler.onGuildReady(readyEvent(SERVER_ID));
+		handler.addToUpdateVote(SERVER_ID, voteId);
+		handler.updateVote();
+		handler.addToUpdateVote(SERVER_ID, voteId);
+		handler.updateVote();
+		assertThat(handler.skippedUpdates()).isEqualTo(1);
+
+		// The fingerprint is saved with the backlog, so the retry after a restart is skipped, too
+		handler.addToUpdateVote(SERVER_ID, voteId);
+		handler.close();
+		handler = newHandler();
+		handler.loadSavedTodos();
+		handler.onGuildReady(readyEvent(SERVER_ID));
+		handler.updateVote();
+		assertThat(handler.skippedUpdates()).isEqualTo(1);
+		assertThat(handler.todoQueueLength()).isZero();
 	}
 
 	@Test
 	void testDeleteOldVotes() {
 		EasyMock.replay(bot);
-		handler = new VoteUpdateHandler(bot);
+		handler = newHandler();
 		assertThatNoException().isThrownBy(handler::deleteOldVotes);
 	}
 
 	@Test
 	void testAddToLastEditVote() throws InterruptedException {
 		EasyMock.replay(bot);
-		handler = new VoteUpdateHandler(bot);
+		handler = newHandler();
 
 		final VoteSettings settings = VoteSettings.create(Duration.ofSeconds(1), (byte) 2, false, ZoneId.of("UTC"));
 		try (Db.Transaction trans = db.getTransaction(SERVER_ID)) {
@@ -115,7 +471,7 @@ class VoteUpdateHandlerTest {
 	@Test
 	void testStartAndStop() {
 		EasyMock.replay(bot);
-		handler = new VoteUpdateHandler(bot);
+		handler = newHandler();
 		assertThatNoException().isThrownBy(handler::start);
 		assertThatNoException().isThrownBy(handler::close);
 	}